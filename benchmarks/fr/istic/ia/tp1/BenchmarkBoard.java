@@ -0,0 +1,86 @@
+package fr.istic.ia.tp1;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of the {@link CheckerBoard} lookups and of the move generation of {@link EnglishDraughts},
+ * on the draughts positions of {@link BenchmarkPositions} (run with {@link BenchmarkGame#main(String[])}).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BenchmarkBoard {
+
+	/**
+	 * A draughts position of the corpus, with a move buffer
+	 */
+	@State(Scope.Thread)
+	public static class DraughtsPosition {
+		@Param({"draughts6-opening", "draughts6-midgame", "draughts6-endgame",
+		        "draughts8-opening", "draughts8-midgame", "draughts8-endgame",
+		        "draughts10-opening", "draughts10-midgame", "draughts10-endgame"})
+		String position;
+
+		EnglishDraughts game;
+
+		EnglishDraughts.MoveBuffer moves;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			game = (EnglishDraughts) BenchmarkPositions.create(position);
+			moves = new EnglishDraughts.MoveBuffer();
+		}
+	}
+
+	/**
+	 * Look up the neighbors of all the tiles in the four directions
+	 */
+	@Benchmark
+	public int neighbors(DraughtsPosition position) {
+		CheckerBoard board = position.game.board;
+		int sum = 0;
+		for (int square = 1; square <= board.nbPlayableTiles(); ++square) {
+			sum += board.neighbor(CheckerBoard.UP_LEFT, square) + board.neighbor(CheckerBoard.UP_RIGHT, square)
+			     + board.neighbor(CheckerBoard.DOWN_LEFT, square) + board.neighbor(CheckerBoard.DOWN_RIGHT, square);
+		}
+		return sum;
+	}
+
+	/**
+	 * Look up the landing tiles of the jumps from all the tiles in the four directions
+	 */
+	@Benchmark
+	public int jumpLandings(DraughtsPosition position) {
+		CheckerBoard board = position.game.board;
+		int sum = 0;
+		for (int square = 1; square <= board.nbPlayableTiles(); ++square) {
+			for (int direction = CheckerBoard.UP_LEFT; direction <= CheckerBoard.DOWN_RIGHT; ++direction) {
+				sum += board.jumpLanding(direction, square);
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * Generate the possible moves into a buffer, without the cache nor the {@link Game.Move} objects
+	 */
+	@Benchmark
+	public int generateMoves(DraughtsPosition position) {
+		return position.game.generateMoves(position.moves);
+	}
+}
@@ -0,0 +1,87 @@
+package fr.istic.ia.tp1;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmarks of the {@link Game} operations used by the searches, on the positions of {@link BenchmarkPositions}.
+ *
+ * The draughts games cache the possible moves of their current state: the benchmarks of
+ * {@link Game#possibleMoves()} and {@link Game#winner()} work on a fresh copy of the position
+ * so that the moves are actually generated ({@link #cloneGame} gives the cost of the copy).
+ *
+ * The benchmarks are in their own module (benchmarks/benchmarks.iml, with the JMH library), so that the game
+ * and the tests compile without JMH. Run all the benchmarks with {@link #main(String[])} (the JMH annotation 
+ * processor must be enabled to compile them), which reports the throughput and the allocation rate of each benchmark.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BenchmarkGame {
+
+	@Benchmark
+	public Game cloneGame(BenchmarkPositions positions) {
+		return positions.game.clone();
+	}
+
+	@Benchmark
+	public List<Game.Move> possibleMoves(BenchmarkPositions positions) {
+		return positions.game.clone().possibleMoves();
+	}
+
+	@Benchmark
+	public Game.PlayerId winner(BenchmarkPositions positions) {
+		return positions.game.clone().winner();
+	}
+
+	/**
+	 * Play the first possible move and undo it: the undo invalidating the moves cached by a draughts game,
+	 * this includes a generation of the moves, as in a playout.
+	 */
+	@Benchmark
+	public Game playMoveAndUndo(BenchmarkPositions positions) {
+		Game game = positions.game;
+		game.playMove(0);
+		game.undo();
+		return game;
+	}
+
+	/**
+	 * Play a {@link Game.Move} object (as the players do) and undo it
+	 */
+	@Benchmark
+	public Game playAndUndo(BenchmarkPositions positions) {
+		Game game = positions.game;
+		game.play(positions.firstMove);
+		game.undo();
+		return game;
+	}
+
+	/**
+	 * Run all the benchmarks of the project with the GC profiler (allocation rate per operation).
+	 * A regular expression selecting the benchmarks to run can be given as argument.
+	 * @param args Optional regular expression on the benchmark names
+	 * @throws RunnerException If a benchmark fails
+	 */
+	public static void main(String[] args) throws RunnerException {
+		String include = (args.length > 0) ? args[0] : "fr\\.istic\\.ia\\.tp1\\.Benchmark.*";
+		new Runner(new OptionsBuilder()
+				.include(include)
+				.addProfiler(GCProfiler.class)
+				.build()).run();
+	}
+}
@@ -0,0 +1,112 @@
+package fr.istic.ia.tp1;
+
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The fixed corpus of game states of the JMH benchmarks ({@link BenchmarkGame}, {@link BenchmarkSearch}).
+ *
+ * A position is named "<i>game</i>-<i>phase</i>", the game being <code>draughts6</code>, <code>draughts8</code>,
+ * <code>draughts10</code> (English draughts on a 6x6, 8x8 or 10x10 board) or <code>tictactoe</code>,
+ * and the phase <code>opening</code>, <code>midgame</code> or <code>endgame</code>.
+ * Each position is reached by random moves from the initial state, with a fixed seed, so that the corpus is the same
+ * at each run: a few plies for the opening, until a third of the pawns are taken for the midgame,
+ * and until three quarters of them are taken for the endgame.
+ */
+@State(Scope.Thread)
+public class BenchmarkPositions {
+
+	/** The name of the position of the benchmark */
+	@Param({"draughts6-opening", "draughts6-midgame", "draughts6-endgame",
+	        "draughts8-opening", "draughts8-midgame", "draughts8-endgame",
+	        "draughts10-opening", "draughts10-midgame", "draughts10-endgame",
+	        "tictactoe-opening", "tictactoe-midgame", "tictactoe-endgame"})
+	String position;
+
+	/** The game state of the benchmark (benchmarks modifying it must restore it) */
+	Game game;
+
+	/** The first possible move of <code>game</code> */
+	Game.Move firstMove;
+
+	/** The random generator of the benchmarks */
+	Random rand;
+
+	/** The seed of the random moves leading to the positions */
+	static final long SEED = 0xC0FFEEL;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		Log.setLevel(Log.Level.OFF);
+		game = create(position);
+		firstMove = game.possibleMoves().get(0);
+		rand = new FastRandom(SEED);
+	}
+
+	/**
+	 * Create a position of the corpus
+	 * @param name The name of the position, e.g. "draughts8-midgame"
+	 * @return A new game state
+	 */
+	static Game create(String name) {
+		int dash = name.indexOf('-');
+		String gameName = name.substring(0, dash);
+		String phase = name.substring(dash + 1);
+		Random rand = new FastRandom(SEED);
+		while (true) {
+			Game game;
+			int nbPlies;
+			if (gameName.equals("tictactoe")) {
+				game = new TicTacToe();
+				nbPlies = phase.equals("opening") ? 1 : phase.equals("midgame") ? 4 : 6;
+				playRandomly(game, nbPlies, rand);
+			}
+			else if (gameName.startsWith("draughts")) {
+				EnglishDraughts draughts = new EnglishDraughts(Integer.parseInt(gameName.substring("draughts".length())));
+				int nbPawns = nbPawns(draughts);
+				if (phase.equals("opening")) {
+					playRandomly(draughts, 4, rand);
+				}
+				else {
+					int maxPawns = phase.equals("midgame") ? 2 * nbPawns / 3 : nbPawns / 4;
+					while (nbPawns(draughts) > maxPawns && draughts.winner() == null) {
+						draughts.playRandomMove(rand);
+					}
+				}
+				game = draughts;
+			}
+			else {
+				throw new IllegalArgumentException("Unknown benchmark position: " + name);
+			}
+			// Draw again if the random moves ended the game
+			if (game.winner() == null) {
+				return game.clone();
+			}
+		}
+	}
+
+	/**
+	 * Play random moves (stopping at the end of the game)
+	 * @param game The game state
+	 * @param nbPlies The number of moves
+	 * @param rand The random generator
+	 */
+	private static void playRandomly(Game game, int nbPlies, Random rand) {
+		for (int i = 0; i < nbPlies && game.winner() == null; ++i) {
+			game.playRandomMove(rand);
+		}
+	}
+
+	/**
+	 * @param game A draughts game state
+	 * @return The number of pawns of both players on the board
+	 */
+	private static int nbPawns(EnglishDraughts game) {
+		return game.board.nbWhitePawns() + game.board.nbBlackPawns();
+	}
+}
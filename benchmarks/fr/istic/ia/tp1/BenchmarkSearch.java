@@ -0,0 +1,60 @@
+package fr.istic.ia.tp1;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.istic.ia.tp1.MonteCarloTreeSearch.RolloutResults;
+
+/**
+ * JMH benchmarks of the Monte-Carlo Tree Search, on the positions of {@link BenchmarkPositions}
+ * (run with {@link BenchmarkGame#main(String[])}).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BenchmarkSearch {
+
+	/**
+	 * A search tree rooted at the benchmark position, created again at each measurement iteration
+	 * so that its size does not depend on the duration of the previous iterations
+	 */
+	@State(Scope.Thread)
+	public static class Tree {
+		MonteCarloTreeSearch mcts;
+
+		@Setup(Level.Iteration)
+		public void setUp(BenchmarkPositions positions) {
+			mcts = new MonteCarloTreeSearch(positions.game, new FastRandom(BenchmarkPositions.SEED));
+			mcts.setRollouts(1, null);
+		}
+	}
+
+	/**
+	 * One random playout to the end of the game
+	 */
+	@Benchmark
+	public RolloutResults rollOut(BenchmarkPositions positions) {
+		return MonteCarloTreeSearch.rollOut(positions.game, 1, positions.rand);
+	}
+
+	/**
+	 * One MCTS iteration (selection, expansion, one playout, backpropagation)
+	 */
+	@Benchmark
+	public boolean evaluateTreeOnce(Tree tree) {
+		return tree.mcts.evaluateTreeOnce();
+	}
+}
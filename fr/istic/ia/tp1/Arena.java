@@ -0,0 +1,300 @@
+package fr.istic.ia.tp1;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import fr.istic.ia.tp1.Game.Move;
+import fr.istic.ia.tp1.Game.PlayerId;
+
+/**
+ * A headless match between two kinds of {@link Player}: many games are played concurrently on a thread pool,
+ * the players swapping colours at each game, to measure the playing strength of a player against another one
+ * (e.g. to check that an optimization of the search did not make it weaker).
+ *
+ * The results are the wins, draws and losses of the first player, its score with a 95% confidence interval,
+ * the corresponding Elo difference, and the percentiles of the thinking time per move of each player.
+ *
+ * Usage: <code>java fr.istic.ia.tp1.Arena playerA playerB [nbGames [nbThreads [game]]]</code>,
+ * the players and the game being described as in {@link MainGameLoop#playerSupplier(String)}
+ * and {@link MainGameLoop#gameSupplier(String)}.
+ */
+public class Arena {
+
+	/**
+	 * The results of a match, from the point of view of the first player
+	 */
+	static class Results {
+		/** The number of games won, drawn and lost by the first player */
+		int wins, draws, losses;
+
+		/** The normal quantile of the 95% confidence intervals */
+		static final double Z = 1.96;
+
+		/** Whether the match was interrupted before all its games were played */
+		boolean interrupted;
+
+		/** The thinking times of each move of each player (first, second), in nanoseconds */
+		final List<List<Long>> thinkTimes = Arrays.asList(new ArrayList<>(), new ArrayList<>());
+
+		/**
+		 * Add the results of another match
+		 * @param other The results to add
+		 */
+		void add(Results other) {
+			wins += other.wins;
+			draws += other.draws;
+			losses += other.losses;
+			interrupted |= other.interrupted;
+			for (int p = 0; p < 2; ++p) {
+				thinkTimes.get(p).addAll(other.thinkTimes.get(p));
+			}
+		}
+
+		/**
+		 * @return The number of games
+		 */
+		int nbGames() {
+			return wins + draws + losses;
+		}
+
+		/**
+		 * @return The mean score of the first player (1 per win, 1/2 per draw), NaN if no game was played
+		 */
+		double score() {
+			return (wins + 0.5 * draws) / nbGames();
+		}
+
+		/**
+		 * Get the 95% confidence interval of the score: the Wilson score interval, with the variance
+		 * of the win/draw/loss outcomes. Unlike the normal approximation, it does not shrink to a point
+		 * when all the games have the same result, and it stays within [0, 1].
+		 * @return The lower and upper bounds of the score ([0, 1] if no game was played)
+		 */
+		double[] scoreInterval() {
+			int n = nbGames();
+			if (n == 0)
+				return new double[] {0, 1};
+			double s = score();
+			double variance = (wins * (1 - s) * (1 - s) + draws * (0.5 - s) * (0.5 - s) + losses * s * s) / n;
+			double z2 = Z * Z;
+			double center = (s + z2 / (2 * n)) / (1 + z2 / n);
+			double margin = Z / (1 + z2 / n) * Math.sqrt(variance / n + z2 / (4.0 * n * n));
+			return new double[] {Math.max(0, center - margin), Math.min(1, center + margin)};
+		}
+
+		/**
+		 * Convert a score of the match to an Elo rating difference, a score of 0 or 1 being counted 
+		 * as half a game from it (so that the difference stays finite)
+		 * @param score The mean score (e.g. {@link #score()} or a bound of {@link #scoreInterval()})
+		 * @return The Elo difference
+		 */
+		double clampedElo(double score) {
+			double half = 0.5 / nbGames();
+			return elo(Math.max(half, Math.min(1 - half, score)));
+		}
+
+		/**
+		 * Convert a score to an Elo rating difference
+		 * @param score The mean score
+		 * @return The Elo difference (infinite for a score of 0 or 1)
+		 */
+		static double elo(double score) {
+			return -400 * Math.log10(1 / score - 1);
+		}
+
+		/**
+		 * Get a percentile of the thinking times of a player
+		 * @param player 0 for the first player, 1 for the second
+		 * @param percentile The percentile, in [0, 100]
+		 * @return The thinking time in milliseconds (0 if the player did not play)
+		 */
+		double thinkTimePercentile(int player, double percentile) {
+			long[] times = thinkTimes.get(player).stream().mapToLong(Long::longValue).sorted().toArray();
+			if (times.length == 0)
+				return 0;
+			int rank = (int) Math.ceil(percentile / 100 * times.length) - 1;
+			return times[Math.max(0, Math.min(times.length - 1, rank))] / 1e6;
+		}
+	}
+
+	/** The game factory */
+	final Supplier<Game> gameFactory;
+
+	/** The factories of the two players (a new player is created for each game) */
+	final Supplier<Player> playerA, playerB;
+
+	/**
+	 * The constructor
+	 * @param gameFactory The game factory
+	 * @param playerA The factory of the first player
+	 * @param playerB The factory of the second player
+	 */
+	public Arena(Supplier<Game> gameFactory, Supplier<Player> playerA, Supplier<Player> playerB) {
+		this.gameFactory = gameFactory;
+		this.playerA = playerA;
+		this.playerB = playerB;
+	}
+
+	/**
+	 * Play one game
+	 * @param aPlaysFirst <code>true</code> if the first player plays {@link PlayerId#ONE}
+	 * @return The result and thinking times of the game
+	 * @throws CancellationException If the calling thread is interrupted (the match is cut short)
+	 */
+	Results playGame(boolean aPlaysFirst) {
+		Game game = gameFactory.get();
+		Player[] players = { playerA.get(), playerB.get() };
+		Results results = new Results();
+		PlayerId aId = aPlaysFirst ? PlayerId.ONE : PlayerId.TWO;
+
+		PlayerId winner;
+		try {
+			while ((winner = game.winner()) == null) {
+				if (Thread.currentThread().isInterrupted())
+					throw new CancellationException("Game interrupted");
+				int p = (game.player() == aId) ? 0 : 1;
+				long startTime = System.nanoTime();
+				Move move = players[p].play(game);
+				results.thinkTimes.get(p).add(System.nanoTime() - startTime);
+				if (move == null) {
+					// A player that cannot play loses
+					winner = game.player().other();
+					break;
+				}
+				game.play(move);
+			}
+		} finally {
+			MainGameLoop.close(players);
+		}
+
+		if (winner == aId) {
+			results.wins++;
+		}
+		else if (winner == PlayerId.NONE) {
+			results.draws++;
+		}
+		else {
+			results.losses++;
+		}
+		Log.debug("Game " + (aPlaysFirst ? "A-B" : "B-A") + ": " + game.playerName(winner) + " wins");
+		return results;
+	}
+
+	/**
+	 * Play a match, the first player playing {@link PlayerId#ONE} in the even games.
+	 * If the calling thread is interrupted, the games in progress are stopped, and the results are the ones 
+	 * of the games already over, marked as {@link Results#interrupted}.
+	 * @param nbGames The number of games
+	 * @param nbThreads The number of games played concurrently
+	 * @return The results of all the games
+	 */
+	public Results play(int nbGames, int nbThreads) {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, nbThreads), runnable -> {
+			Thread thread = new Thread(runnable, "arena");
+			thread.setDaemon(true);
+			return thread;
+		});
+		List<Future<Results>> games = new ArrayList<>(nbGames);
+		for (int i = 0; i < nbGames; ++i) {
+			boolean aPlaysFirst = (i % 2 == 0);
+			games.add(executor.submit(() -> playGame(aPlaysFirst)));
+		}
+
+		Results results = new Results();
+		try {
+			for (Future<Results> game : games) {
+				game.get();
+			}
+		} catch (InterruptedException e) {
+			results.interrupted = true;
+			for (Future<Results> game : games) {
+				game.cancel(true);
+			}
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			for (Future<Results> game : games) {
+				game.cancel(true);
+			}
+			throw new IllegalStateException("Arena game failed", e.getCause());
+		} finally {
+			executor.shutdown();
+		}
+		// Gather the games over (all of them, unless the match was interrupted)
+		for (Future<Results> game : games) {
+			if (game.isDone() && !game.isCancelled()) {
+				try {
+					results.add(game.get());
+				} catch (InterruptedException | ExecutionException e) {
+					// Not over: cannot happen for a done future that was not cancelled and did not fail
+				}
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Format the results of a match
+	 * @param results The results
+	 * @param nameA The name of the first player
+	 * @param nameB The name of the second player
+	 * @return The report
+	 */
+	static String report(Results results, String nameA, String nameB) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%s vs %s: %d games%n", nameA, nameB, results.nbGames()));
+		if (results.interrupted) {
+			sb.append(String.format("Match interrupted: only the %d games over are counted%n", results.nbGames()));
+		}
+		if (results.nbGames() == 0)
+			return sb.toString();
+		double[] interval = results.scoreInterval();
+		sb.append(String.format("Wins %d, draws %d, losses %d: score %.1f%% [%.1f%%, %.1f%%]%n",
+				results.wins, results.draws, results.losses, 100 * results.score(), 100 * interval[0], 100 * interval[1]));
+		sb.append(String.format("Elo difference %+.0f [%+.0f, %+.0f]%n", results.clampedElo(results.score()),
+				results.clampedElo(interval[0]), results.clampedElo(interval[1])));
+		String[] names = { nameA, nameB };
+		for (int p = 0; p < 2; ++p) {
+			sb.append(String.format("Think time of %s (%d moves): p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, max %.1f ms%n",
+					names[p], results.thinkTimes.get(p).size(), results.thinkTimePercentile(p, 50),
+					results.thinkTimePercentile(p, 90), results.thinkTimePercentile(p, 99),
+					results.thinkTimePercentile(p, 100)));
+		}
+		return sb.toString();
+	}
+
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.err.println("Usage: Arena playerA playerB [nbGames [nbThreads [game]]]");
+			System.err.println("e.g.   Arena mcts:time=100 random 100 4 draughts8");
+			return;
+		}
+		MainGameLoop.NamedSupplier<Player> playerA, playerB;
+		MainGameLoop.NamedSupplier<Game> game;
+		int nbGames, nbThreads;
+		try {
+			playerA = MainGameLoop.playerSupplier(args[0]);
+			playerB = MainGameLoop.playerSupplier(args[1]);
+			nbGames = (args.length > 2) ? Integer.parseInt(args[2]) : 100;
+			nbThreads = (args.length > 3) ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+			game = MainGameLoop.gameSupplier((args.length > 4) ? args[4] : "draughts8");
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			return;
+		}
+
+		Log.setLevel(Log.Level.OFF);
+		long startTime = System.nanoTime();
+		Results results = new Arena(game, playerA, playerB).play(nbGames, nbThreads);
+		System.out.println(game + ", " + nbGames + " games in "
+				+ TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startTime) + " s");
+		System.out.print(report(results, playerA.toString(), playerB.toString()));
+	}
+}
@@ -4,6 +4,7 @@
 package fr.istic.ia.tp1;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.function.Function;
 import java.util.function.Predicate;
 
@@ -14,7 +15,24 @@ import java.util.function.Predicate;
  */
 public class CheckerBoard {
 	final byte size;
-	private byte[] state;
+	
+	/** The number of 64-bit words of the bitmasks (one bit per playable tile) */
+	final int words;
+	
+	/** Bitmasks of the tiles holding white pawns, black pawns, kings (of both colors) and nothing. Tile n is bit n-1. */
+	final long[] whites, blacks, kings, empties;
+	
+	/** The precomputed neighbor tables and shift masks for the size of this board */
+	final Geometry geometry;
+	
+	/** The number of white pawns and of black pawns, maintained by {@link #set(int, byte)} */
+	private int nbWhites, nbBlacks;
+	
+	/** A counter incremented by each modification of the board, to detect stale cached data */
+	int modCount;
+	
+	/** The Zobrist hash of the pawns: XOR of the {@link #ZOBRIST} keys of all the pawns, maintained by {@link #set(int, byte)} */
+	long zobrist;
 	
 	/** An ID indicating a point was not on the checker board. */
 	public static final byte INVALID = -1;
@@ -34,6 +52,165 @@ public class CheckerBoard {
 	/** The ID of a white checker that is also a king. */
 	public static final byte WHITE_KING = 4 * 1 + 2 * 0 + 1 * 1;
 	
+	/** Direction towards the top-left of the board (blacks side) */
+	public static final int UP_LEFT = 0;
+	
+	/** Direction towards the top-right of the board (blacks side) */
+	public static final int UP_RIGHT = 1;
+	
+	/** Direction towards the bottom-left of the board (whites side) */
+	public static final int DOWN_LEFT = 2;
+	
+	/** Direction towards the bottom-right of the board (whites side) */
+	public static final int DOWN_RIGHT = 3;
+	
+	/**
+	 * Lookup tables and bitmasks depending only on the board size, computed once per size.
+	 * Bit i of a mask word w stands for tile 64*w+i+1.
+	 */
+	static final class Geometry {
+		/** Neighbor of each tile in each direction, 0 if none: <code>neighbor[direction][square]</code> */
+		final int[][] neighbor;
+		
+		/** Landing tile of a jump from each tile in each direction, 0 if none: <code>jump[direction][square]</code> */
+		final int[][] jump;
+		
+		/** 
+		 * Tiles having a neighbor in a direction, split by row parity: <code>stepSource[direction][parity][word]</code>.
+		 * All the tiles of a given parity reach their neighbor with the same index offset <code>stepDelta[direction][parity]</code>.
+		 */
+		final long[][][] stepSource;
+		final int[][] stepDelta;
+		
+		/** Tiles having a jump landing in a direction, and the (constant) index offset of the landing tile */
+		final long[][] jumpSource;
+		final int[] jumpDelta;
+		
+		/** Masks of the playable tiles, of the top row (blacks side) and of the bottom row (whites side) */
+		final long[] valid, topRow, bottomRow;
+		
+		Geometry(CheckerBoard board) {
+			int nbTiles = board.nbPlayableTiles();
+			int half = board.size / 2;
+			int words = board.words;
+			neighbor = new int[4][nbTiles + 1];
+			jump = new int[4][nbTiles + 1];
+			stepSource = new long[4][2][words];
+			stepDelta = new int[4][2];
+			jumpSource = new long[4][words];
+			jumpDelta = new int[4];
+			valid = new long[words];
+			topRow = new long[words];
+			bottomRow = new long[words];
+			
+			for (int p = 0; p < 2; ++p) {
+				stepDelta[UP_LEFT][p]    = -half - p;
+				stepDelta[UP_RIGHT][p]   = -half - p + 1;
+				stepDelta[DOWN_LEFT][p]  =  half - p;
+				stepDelta[DOWN_RIGHT][p] =  half - p + 1;
+			}
+			for (int direction = UP_LEFT; direction <= DOWN_RIGHT; ++direction) {
+				jumpDelta[direction] = stepDelta[direction][0] + stepDelta[direction][1];
+			}
+			
+			for (int square = 1; square <= nbTiles; ++square) {
+				int w = word(square);
+				long bit = bit(square);
+				int parity = (board.lineOfSquare(square) + 1) % 2;
+				valid[w] |= bit;
+				if (board.inTopRow(square))    topRow[w] |= bit;
+				if (board.inBottomRow(square)) bottomRow[w] |= bit;
+				
+				neighbor[UP_LEFT][square]    = board.computeNeighborUpLeft(square);
+				neighbor[UP_RIGHT][square]   = board.computeNeighborUpRight(square);
+				neighbor[DOWN_LEFT][square]  = board.computeNeighborDownLeft(square);
+				neighbor[DOWN_RIGHT][square] = board.computeNeighborDownRight(square);
+				for (int direction = UP_LEFT; direction <= DOWN_RIGHT; ++direction) {
+					if (neighbor[direction][square] != 0) {
+						assert neighbor[direction][square] - square == stepDelta[direction][parity];
+						stepSource[direction][parity][w] |= bit;
+					}
+				}
+			}
+			for (int square = 1; square <= nbTiles; ++square) {
+				for (int direction = UP_LEFT; direction <= DOWN_RIGHT; ++direction) {
+					int next = neighbor[direction][square];
+					if (next != 0 && neighbor[direction][next] != 0) {
+						jump[direction][square] = neighbor[direction][next];
+						jumpSource[direction][word(square)] |= bit(square);
+					}
+				}
+			}
+		}
+	}
+	
+	/** Zobrist keys: one random key per pawn ID (e.g. {@link #WHITE_KING}) and tile number, for all board sizes */
+	static final long[][] ZOBRIST = new long[8][12 * 12 / 2 + 1];
+	static {
+		long seed = 0x5EED_CAFE_D1CEL;
+		for (int pawn = WHITE_CHECKER; pawn <= BLACK_KING; ++pawn) {
+			for (int square = 1; square < ZOBRIST[pawn].length; ++square) {
+				seed += 0x9E3779B97F4A7C15L;
+				ZOBRIST[pawn][square] = FastRandom.mix(seed);
+			}
+		}
+	}
+	
+	/** Geometries of all the valid board sizes, indexed by size */
+	private static final Geometry[] GEOMETRIES = new Geometry[13];
+	static {
+		for (int size = 4; size <= 12; size += 2) {
+			GEOMETRIES[size] = new CheckerBoard(size, null).geometry;
+		}
+	}
+	
+	/**
+	 * Bit representing a tile in its bitmask word
+	 * @param square Tile number
+	 * @return The bit of the tile in the word {@link #word(int)}
+	 */
+	static long bit(int square) {
+		return 1L << (square - 1); // shift distance is taken modulo 64
+	}
+	
+	/**
+	 * Index of the bitmask word holding a tile
+	 * @param square Tile number
+	 * @return The word index
+	 */
+	static int word(int square) {
+		return (square - 1) >>> 6;
+	}
+	
+	/**
+	 * Tile number of the lowest bit set in a bitmask word
+	 * @param w Word index
+	 * @param bits Non-zero word
+	 * @return The tile number
+	 */
+	static int firstSquare(int w, long bits) {
+		return (w << 6) + Long.numberOfTrailingZeros(bits) + 1;
+	}
+	
+	/**
+	 * Align a bitmask on the tiles located <code>delta</code> indexes before: 
+	 * bit i of the result is bit i+delta of <code>mask</code>.
+	 * @param mask Multi-word bitmask
+	 * @param w Index of the word to compute
+	 * @param delta Index offset, non-zero and between -63 and 63
+	 * @return Word <code>w</code> of the shifted mask
+	 */
+	static long aligned(long[] mask, int w, int delta) {
+		if (delta > 0) {
+			long word = mask[w] >>> delta;
+			if (w + 1 < mask.length) word |= mask[w + 1] << (64 - delta);
+			return word;
+		}
+		long word = mask[w] << -delta;
+		if (w > 0) word |= mask[w - 1] >>> (64 + delta);
+		return word;
+	}
+	
 	/** 
 	 *  Default constructor, create a 64-tile (8x8) checker board.
 	 */
@@ -46,11 +223,8 @@ public class CheckerBoard {
 	 * @param size The size of one side of the checker board. Valid sizes are 4, 6, 8, 10 and 12.
 	 */
 	public CheckerBoard(int size) {
-		assert size >= 3 && size <= 12 : "Cannot create board with size <3 or >12";
-		assert size % 2 == 0 : "Cannot create a board with odd size";
-		this.size = (byte)size;
+		this(size, GEOMETRIES[size]);
 		int nbPlaces = (size * size) / 2;
-		this.state = new byte[nbPlaces];
 		int nbPawnsPerPlayer = (size/2 - 1) * (size/2);
 		for (int k = 0; k<nbPawnsPerPlayer; ++k) {
 			set(nbPlaces - k, WHITE_CHECKER);
@@ -58,13 +232,39 @@ public class CheckerBoard {
 		}
 	}
 	
+	/**
+	 * Create an empty board, computing its geometry if <code>geometry</code> is null.
+	 * @param size The size of one side of the checker board
+	 * @param geometry The precomputed geometry for this size
+	 */
+	private CheckerBoard(int size, Geometry geometry) {
+		assert size >= 3 && size <= 12 : "Cannot create board with size <3 or >12";
+		assert size % 2 == 0 : "Cannot create a board with odd size";
+		this.size = (byte)size;
+		this.words = ((size * size) / 2 + 63) / 64;
+		this.whites = new long[words];
+		this.blacks = new long[words];
+		this.kings = new long[words];
+		this.empties = new long[words];
+		this.geometry = (geometry != null) ? geometry : new Geometry(this);
+		System.arraycopy(this.geometry.valid, 0, empties, 0, words);
+	}
+	
 	/**
 	 * Copy constructor
 	 * @param board
 	 */
 	protected CheckerBoard(CheckerBoard board) {
 		this.size = board.size;
-		this.state = board.state.clone();
+		this.words = board.words;
+		this.geometry = board.geometry;
+		this.whites = board.whites.clone();
+		this.blacks = board.blacks.clone();
+		this.kings = board.kings.clone();
+		this.empties = board.empties.clone();
+		this.nbWhites = board.nbWhites;
+		this.nbBlacks = board.nbBlacks;
+		this.zobrist = board.zobrist;
 	}
 	
 	@Override
@@ -72,12 +272,26 @@ public class CheckerBoard {
 		return new CheckerBoard(this);
 	}
 	
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof CheckerBoard))
+			return false;
+		CheckerBoard other = (CheckerBoard) obj;
+		return zobrist == other.zobrist && size == other.size && Arrays.equals(whites, other.whites) 
+				&& Arrays.equals(blacks, other.blacks) && Arrays.equals(kings, other.kings);
+	}
+	
+	@Override
+	public int hashCode() {
+		return Long.hashCode(zobrist);
+	}
+	
 	/**
 	 * Get the number of playable (black) tiles in the checker board
 	 * @return The number of black tiles
 	 */
 	public int nbPlayableTiles() {
-		return state.length;
+		return (size * size) / 2;
 	}
 	
 	
@@ -86,8 +300,8 @@ public class CheckerBoard {
 	 * @return
 	 */
 	public boolean isEmpty() {
-		for (int i=1; i<=nbPlayableTiles(); ++i)
-			if (get(i) != EMPTY)
+		for (int w = 0; w < words; ++w)
+			if ((whites[w] | blacks[w]) != 0)
 				return false;
 		return true;
 	}
@@ -206,7 +420,25 @@ public class CheckerBoard {
 	 * @param value ID of the pawn type (e.g {@link CheckerBoard#BLACK_CHECKER}, {@link CheckerBoard#BLACK_KING}... or {@link CheckerBoard#EMPTY})
 	 */
 	 void set(int square, byte value) {
-		state[square-1] = value;
+		int w = word(square);
+		long bit = bit(square);
+		byte previous = get(square);
+		if (previous != EMPTY) zobrist ^= ZOBRIST[previous][square];
+		if (value != EMPTY) zobrist ^= ZOBRIST[value][square];
+		if ((whites[w] & bit) != 0) nbWhites--;
+		if ((blacks[w] & bit) != 0) nbBlacks--;
+		modCount++;
+		whites[w] &= ~bit;
+		blacks[w] &= ~bit;
+		kings[w] &= ~bit;
+		empties[w] &= ~bit;
+		switch (value) {
+		case WHITE_KING:	whites[w] |= bit; kings[w] |= bit; nbWhites++; break;
+		case WHITE_CHECKER:	whites[w] |= bit; nbWhites++; break;
+		case BLACK_KING:	blacks[w] |= bit; kings[w] |= bit; nbBlacks++; break;
+		case BLACK_CHECKER:	blacks[w] |= bit; nbBlacks++; break;
+		default:			empties[w] |= bit;
+		}
 	}
 	
 	/**
@@ -215,7 +447,13 @@ public class CheckerBoard {
 	 * @return ID of the present pawn type (or {@link CheckerBoard#EMPTY})
 	 */
 	public byte get(int square) {
-		return state[square-1];
+		int w = word(square);
+		long bit = bit(square);
+		if ((whites[w] & bit) != 0)
+			return (kings[w] & bit) != 0 ? WHITE_KING : WHITE_CHECKER;
+		if ((blacks[w] & bit) != 0)
+			return (kings[w] & bit) != 0 ? BLACK_KING : BLACK_CHECKER;
+		return EMPTY;
 	}
 	
 	/**
@@ -266,11 +504,11 @@ public class CheckerBoard {
 	}
 	
 	/**
-	 * Get the tile-number of the top-left neighbor (i.e towards the blacks side) of a given tile
+	 * Arithmetic computation of the top-left neighbor, used to fill the {@link Geometry} tables
 	 * @param square Number of the given tile
 	 * @return Top-left neighbor of the given square number, 0 if no neighbor
 	 */
-	public int neighborUpLeft(int square) {
+	private int computeNeighborUpLeft(int square) {
 		if (!inTopRow(square) && !inLeftRow(square))
 			return square - (size / 2) - (lineOfSquare(square)+1) % 2;
 		else
@@ -278,11 +516,11 @@ public class CheckerBoard {
 	}
 	
 	/**
-	 * Get the tile-number of the bottom-left neighbor (i.e towards the whites side) of a given tile
+	 * Arithmetic computation of the bottom-left neighbor, used to fill the {@link Geometry} tables
 	 * @param square Number of the given tile
 	 * @return Bottom-left neighbor of the given square number, 0 if no neighbor
 	 */
-	public int neighborDownLeft(int square) {
+	private int computeNeighborDownLeft(int square) {
 		if (!inBottomRow(square) && !inLeftRow(square))
 			return square + (size / 2) - (lineOfSquare(square)+1) % 2;
 		else
@@ -290,11 +528,11 @@ public class CheckerBoard {
 	}
 	
 	/**
-	 * Get the tile-number of the top-right neighbor (i.e towards the blacks side) of a given tile
+	 * Arithmetic computation of the top-right neighbor, used to fill the {@link Geometry} tables
 	 * @param square Number of the given tile
 	 * @return Top-right neighbor of the given square number, 0 if no neighbor
 	 */
-	public int neighborUpRight(int square) {
+	private int computeNeighborUpRight(int square) {
 		if (!inTopRow(square) && !inRightRow(square))
 			return square - (size / 2) - (lineOfSquare(square)+1) % 2 + 1;
 		else
@@ -302,29 +540,117 @@ public class CheckerBoard {
 	}
 	
 	/**
-	 * Get the tile-number of the bottom-right neighbor (i.e towards the whites) of a given tile
+	 * Arithmetic computation of the bottom-right neighbor, used to fill the {@link Geometry} tables
 	 * @param square Number of the given tile
 	 * @return Bottom-right neighbor of the given square number, 0 if no neighbor
 	 */
-	public int neighborDownRight(int square) {
+	private int computeNeighborDownRight(int square) {
 		if (!inBottomRow(square) && !inRightRow(square))
 			return square + (size / 2) - (lineOfSquare(square)+1) % 2 + 1;
 		else
 			return 0;
 	}
 	
+	/**
+	 * Get the tile-number of the neighbor of a given tile in a given direction
+	 * @param direction One of {@link #UP_LEFT}, {@link #UP_RIGHT}, {@link #DOWN_LEFT}, {@link #DOWN_RIGHT}
+	 * @param square Number of the given tile (0 is accepted and has no neighbor)
+	 * @return Neighbor of the given square number, 0 if no neighbor
+	 */
+	public int neighbor(int direction, int square) {
+		return geometry.neighbor[direction][square];
+	}
+	
+	/**
+	 * Get the tile-number reached by jumping over the neighbor of a given tile in a given direction
+	 * @param direction One of {@link #UP_LEFT}, {@link #UP_RIGHT}, {@link #DOWN_LEFT}, {@link #DOWN_RIGHT}
+	 * @param square Number of the given tile (0 is accepted and has no neighbor)
+	 * @return Landing square of the jump, 0 if out of board
+	 */
+	public int jumpLanding(int direction, int square) {
+		return geometry.jump[direction][square];
+	}
+	
+	/**
+	 * Get the tile-number of the top-left neighbor (i.e towards the blacks side) of a given tile
+	 * @param square Number of the given tile
+	 * @return Top-left neighbor of the given square number, 0 if no neighbor
+	 */
+	public int neighborUpLeft(int square) {
+		return geometry.neighbor[UP_LEFT][square];
+	}
+	
+	/**
+	 * Get the tile-number of the bottom-left neighbor (i.e towards the whites side) of a given tile
+	 * @param square Number of the given tile
+	 * @return Bottom-left neighbor of the given square number, 0 if no neighbor
+	 */
+	public int neighborDownLeft(int square) {
+		return geometry.neighbor[DOWN_LEFT][square];
+	}
+	
+	/**
+	 * Get the tile-number of the top-right neighbor (i.e towards the blacks side) of a given tile
+	 * @param square Number of the given tile
+	 * @return Top-right neighbor of the given square number, 0 if no neighbor
+	 */
+	public int neighborUpRight(int square) {
+		return geometry.neighbor[UP_RIGHT][square];
+	}
+	
+	/**
+	 * Get the tile-number of the bottom-right neighbor (i.e towards the whites) of a given tile
+	 * @param square Number of the given tile
+	 * @return Bottom-right neighbor of the given square number, 0 if no neighbor
+	 */
+	public int neighborDownRight(int square) {
+		return geometry.neighbor[DOWN_RIGHT][square];
+	}
+	
 	/**
 	 * The number of the square between the two squares <code>square1</code> and <code>square2</code>.
-	 * Only valid if <code>square1</code> and <code>square2</code> are in the same diagonal.
+	 * Only valid if <code>square2</code> is reached by a jump from <code>square1</code>.
 	 * @param square1
 	 * @param square2
-	 * @return
+	 * @return The jumped square, or 0 if <code>square2</code> is not a jump landing of <code>square1</code>
 	 */
 	public int squareBetween(int square1, int square2) {
-		if ((square1 - square2 < size/2 + 2) && (square2 - square1 < size/2 + 2))
-			return 0;
-		else
-			return (square1 + square2) / 2 + 1 - (lineOfSquare(square1)+1) % 2;
+		for (int direction = UP_LEFT; direction <= DOWN_RIGHT; ++direction) {
+			if (geometry.jump[direction][square1] == square2)
+				return geometry.neighbor[direction][square1];
+		}
+		return 0;
+	}
+	
+	/**
+	 * Word <code>w</code> of the mask of tiles having an empty neighbor in the given direction.
+	 * Computed for all the tiles at once by shifting the empty tiles mask.
+	 * @param direction One of {@link #UP_LEFT}, {@link #UP_RIGHT}, {@link #DOWN_LEFT}, {@link #DOWN_RIGHT}
+	 * @param w Word index
+	 * @return A bitmask word
+	 */
+	long stepMovers(int direction, int w) {
+		long[][] source = geometry.stepSource[direction];
+		int[] delta = geometry.stepDelta[direction];
+		return (source[0][w] & aligned(empties, w, delta[0]))
+		     | (source[1][w] & aligned(empties, w, delta[1]));
+	}
+	
+	/**
+	 * Word <code>w</code> of the mask of tiles that can jump in the given direction, 
+	 * i.e. with a pawn of the given color as neighbor and an empty tile behind.
+	 * @param direction One of {@link #UP_LEFT}, {@link #UP_RIGHT}, {@link #DOWN_LEFT}, {@link #DOWN_RIGHT}
+	 * @param overBlacks <code>true</code> to jump over black pawns, <code>false</code> for white pawns
+	 * @param w Word index
+	 * @return A bitmask word
+	 */
+	long jumpers(int direction, boolean overBlacks, int w) {
+		long[] prey = overBlacks ? blacks : whites;
+		long[][] source = geometry.stepSource[direction];
+		int[] delta = geometry.stepDelta[direction];
+		long besidePrey = (source[0][w] & aligned(prey, w, delta[0]))
+		                | (source[1][w] & aligned(prey, w, delta[1]));
+		return besidePrey & geometry.jumpSource[direction][w] & aligned(empties, w, geometry.jumpDelta[direction]);
 	}
 	
 	/**
@@ -333,7 +659,7 @@ public class CheckerBoard {
 	 * @return
 	 */
 	public boolean isEmpty(int square) {
-		return get(square) == EMPTY;
+		return (empties[word(square)] & bit(square)) != 0;
 	}
 	
 	/**
@@ -342,8 +668,7 @@ public class CheckerBoard {
 	 * @return
 	 */
 	public boolean isBlack(int square) {
-		byte type = get(square);
-		return type == BLACK_CHECKER || type == BLACK_KING;
+		return (blacks[word(square)] & bit(square)) != 0;
 	}
 	
 	/**
@@ -352,8 +677,7 @@ public class CheckerBoard {
 	 * @return
 	 */
 	public boolean isWhite(int square) {
-		byte type = get(square);
-		return type == WHITE_CHECKER || type == WHITE_KING;
+		return (whites[word(square)] & bit(square)) != 0;
 	}
 	
 	/**
@@ -362,8 +686,7 @@ public class CheckerBoard {
 	 * @return
 	 */
 	public boolean isKing(int square) {
-		byte type = get(square);
-		return type == WHITE_KING || type == BLACK_KING;
+		return (kings[word(square)] & bit(square)) != 0;
 	}
 	
 	/**
@@ -389,40 +712,68 @@ public class CheckerBoard {
 	 * @param square Tile number of the pawn to crown
 	 */
 	public void crownPawn(int square) {
-		byte currentPawn = get(square);
-		if (currentPawn == WHITE_CHECKER)
-			set(square, WHITE_KING);
-		else if (currentPawn == BLACK_CHECKER)
-			set(square, BLACK_KING);
+		byte pawn = get(square);
+		if (pawn != EMPTY) {
+			kings[word(square)] |= bit(square);
+			zobrist ^= ZOBRIST[pawn][square] ^ ZOBRIST[pawn | 1][square];
+			modCount++;
+		}
+	}
+	
+	/**
+	 * Get the Zobrist hash of the pawns, updated incrementally by each modification of the board.
+	 * Boards with the same pawns have the same hash.
+	 * @return The XOR of one random key per pawn type and tile
+	 */
+	public long zobristHash() {
+		return zobrist;
+	}
+	
+	/**
+	 * Get the number of white pawns (checkers and kings) on the board, without scanning it
+	 * @return The number of white pawns
+	 */
+	public int nbWhitePawns() {
+		return nbWhites;
+	}
+	
+	/**
+	 * Get the number of black pawns (checkers and kings) on the board, without scanning it
+	 * @return The number of black pawns
+	 */
+	public int nbBlackPawns() {
+		return nbBlacks;
 	}
 
 	/**
-	 * Retrieve the positions of all white pawns in the board
-	 * @return The list of white pawns
+	 * Retrieve the positions of the pawns of a bitmask
+	 * @param mask Bitmask of the pawns
+	 * @return The list of pawn positions
 	 */
-	public ArrayList<Integer> getWhitePawns() {
+	private ArrayList<Integer> pawnsOf(long[] mask) {
 		ArrayList<Integer> myPawns = new ArrayList<Integer>();
 		myPawns.ensureCapacity((size/2 - 1) * (size/2));
-		for (int pawn = 1; pawn <= nbPlayableTiles(); ++pawn) {
-			if ( isWhite(pawn) ) {
-				myPawns.add( pawn );
+		for (int w = 0; w < words; ++w) {
+			for (long bits = mask[w]; bits != 0; bits &= bits - 1) {
+				myPawns.add( firstSquare(w, bits) );
 			}
 		}
 		return myPawns;
 	}
+
+	/**
+	 * Retrieve the positions of all white pawns in the board
+	 * @return The list of white pawns
+	 */
+	public ArrayList<Integer> getWhitePawns() {
+		return pawnsOf(whites);
+	}
 	
 	/**
 	 * Retrieve the positions of all black pawns in the board
 	 * @return The list of black pawns
 	 */
 	public ArrayList<Integer> getBlackPawns() {
-		ArrayList<Integer> myPawns = new ArrayList<Integer>();
-		myPawns.ensureCapacity((size/2 - 1) * (size/2));
-		for (int pawn = 1; pawn <= nbPlayableTiles(); ++pawn) {
-			if ( isBlack(pawn) ) {
-				myPawns.add( pawn );
-			}
-		}
-		return myPawns;
+		return pawnsOf(blacks);
 	}
 }
@@ -0,0 +1,449 @@
+package fr.istic.ia.tp1;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import fr.istic.ia.tp1.Game.Move;
+import fr.istic.ia.tp1.Game.PlayerId;
+import fr.istic.ia.tp1.MonteCarloTreeSearch.RolloutResults;
+
+/**
+ * A Monte-Carlo Tree Search ({@link MonteCarloTreeSearch}) storing its tree in a pool of primitive arrays
+ * instead of one object per node.
+ *
+ * A node is an int index in the arrays <code>n</code>, <code>w</code>, <code>firstChild</code>, <code>nbChildren</code>
+ * and <code>solved</code>.
+ * The children of a node are stored contiguously, in the order of {@link Game#possibleMoves()}:
+ * the move leading to a node is its rank among its siblings, played with {@link Game#playMove(int)}.
+ * A node thus costs 21 bytes, and the selection loop reads the statistics of the children sequentially.
+ *
+ * The tree is searched by a single thread.
+ */
+public class CompactMonteCarloTreeSearch {
+
+	/** Index of the root node */
+	static final int ROOT = 0;
+
+	/** The number of simulations run through each node */
+	int[] n;
+
+	/** The number of simulations of each node won by {@link #player} */
+	double[] w;
+
+	/** The index of the first child of each node (0 if not expanded) */
+	int[] firstChild;
+
+	/** The number of children of each node (0 if not expanded) */
+	int[] nbChildren;
+
+	/** Whether the subtree of each node is fully explored (see {@link MonteCarloTreeSearch.EvalNode#solved}) */
+	boolean[] solved;
+
+	/** The number of used nodes */
+	int nbNodes;
+
+	/** The maximum number of nodes (see {@link #setNodeBudget(int)}) */
+	int maxNodes;
+
+	/** The game state of the root (never modified) */
+	final Game rootGame;
+
+	/** The working game state, walked down from the root and back with {@link Game#undo()} (if the game can undo moves) */
+	final Game state;
+
+	/** The player whose wins are counted in the nodes */
+	final PlayerId player;
+
+	/** The random generator of the rollouts */
+	final Random rand;
+
+	/** The number of evaluations (MCTS iterations) run (only a statistic, see {@link MonteCarloTreeSearch#nTotal}) */
+	int nTotal;
+
+	/** The number of rollouts run from each selected leaf */
+	int nbRolloutsPerEval;
+
+	/** Whether a search stops when its best move can no longer change */
+	boolean earlyTermination;
+
+	/** The detection of the convergence of a search */
+	ConvergenceCheck convergence = new ConvergenceCheck(0);
+
+	/** The nodes visited by the current iteration */
+	private int[] visitedNodes;
+
+	/**
+	 * The constructor
+	 * @param game The game state to search from
+	 */
+	public CompactMonteCarloTreeSearch(Game game) {
+		this(game, 1 << 16, new FastRandom());
+	}
+
+	/**
+	 * Constructor with a given initial number of nodes and random generator
+	 * @param game The game state to search from
+	 * @param capacity The number of nodes allocated at once (the arrays grow when it is reached)
+	 * @param rand The random generator used by the rollouts
+	 */
+	public CompactMonteCarloTreeSearch(Game game, int capacity, Random rand) {
+		rootGame = game.clone();
+		state = rootGame.clone();
+		player = game.player();
+		this.rand = rand;
+		capacity = Math.max(1, capacity);
+		n = new int[capacity];
+		w = new double[capacity];
+		firstChild = new int[capacity];
+		nbChildren = new int[capacity];
+		solved = new boolean[capacity];
+		nbNodes = 1;
+		maxNodes = MonteCarloTreeSearch.DEFAULT_NODE_BUDGET;
+		nTotal = 0;
+		nbRolloutsPerEval = 100;
+		visitedNodes = new int[64];
+	}
+
+	/**
+	 * Set the number of rollouts run from each selected leaf
+	 * @param nbRolloutsPerEval The number of rollouts per leaf
+	 */
+	public void setRolloutsPerEval(int nbRolloutsPerEval) {
+		this.nbRolloutsPerEval = nbRolloutsPerEval;
+	}
+
+	/**
+	 * Set whether a search stops before its limit when its best move can no longer change
+	 * (see {@link MonteCarloTreeSearch#setEarlyTermination(boolean)})
+	 * @param earlyTermination <code>true</code> to stop the searches early
+	 */
+	public void setEarlyTermination(boolean earlyTermination) {
+		this.earlyTermination = earlyTermination;
+	}
+
+	/**
+	 * Set whether a search stops before its limit when it has converged
+	 * (see {@link MonteCarloTreeSearch#setConvergenceStop(int)})
+	 * @param nbStableChecks The number of consecutive stable checks to stop the search, or 0 to never stop (default)
+	 */
+	public void setConvergenceStop(int nbStableChecks) {
+		this.convergence = new ConvergenceCheck(nbStableChecks);
+	}
+
+	/**
+	 * Set the maximum number of nodes of the tree. When a search reaches it, the subtrees of the least visited
+	 * nodes are dropped until half of the budget is used (see {@link MonteCarloTreeSearch#setNodeBudget(int)}),
+	 * and the remaining nodes are moved to the start of the arrays.
+	 * @param maxNodes The maximum number of nodes
+	 */
+	public void setNodeBudget(int maxNodes) {
+		this.maxNodes = Math.max(2, maxNodes);
+	}
+
+	/**
+	 * Get the number of nodes of the tree
+	 * @return The number of used nodes
+	 */
+	public int nbNodes() {
+		return nbNodes;
+	}
+
+	/**
+	 * Allocate contiguous nodes, growing the arrays if needed (up to the node budget, unless more is needed)
+	 * @param count The number of nodes
+	 * @return The index of the first allocated node
+	 */
+	private int allocate(int count) {
+		int first = nbNodes;
+		if (first + count > n.length) {
+			int capacity = Math.max(first + count, Math.min(2 * n.length, maxNodes));
+			n = Arrays.copyOf(n, capacity);
+			w = Arrays.copyOf(w, capacity);
+			firstChild = Arrays.copyOf(firstChild, capacity);
+			nbChildren = Arrays.copyOf(nbChildren, capacity);
+			solved = Arrays.copyOf(solved, capacity);
+		}
+		nbNodes += count;
+		return first;
+	}
+
+	/**
+	 * Drop the subtrees of the least visited nodes until the tree has at most <code>targetNodes</code> nodes
+	 * (the dropped nodes are leaves again, with their statistics), then copy the remaining nodes
+	 * to the start of the arrays, in breadth-first order so that the children of a node stay contiguous.
+	 * @param targetNodes The number of nodes to keep
+	 */
+	void prune(int targetNodes) {
+		// Collect the expanded nodes, children before parents
+		ArrayList<Integer> expanded = new ArrayList<>();
+		collectExpanded(ROOT, expanded);
+		expanded.remove(expanded.size() - 1);
+		// A node has at least the simulations of its children: the stable sort keeps them before their parent
+		expanded.sort(Comparator.comparingInt(node -> n[node]));
+		int before = nbNodes;
+		int count = before;
+		for (int node : expanded) {
+			if (count <= targetNodes)
+				break;
+			count -= nbChildren[node];
+			nbChildren[node] = 0;
+			firstChild[node] = 0;
+		}
+
+		// Copy the remaining nodes, from the root down
+		int[] oldNodes = new int[count];
+		int[] newN = new int[n.length];
+		double[] newW = new double[n.length];
+		int[] newFirstChild = new int[n.length];
+		int[] newNbChildren = new int[n.length];
+		boolean[] newSolved = new boolean[n.length];
+		int size = 1;
+		oldNodes[ROOT] = ROOT;
+		for (int node = 0; node < size; ++node) {
+			int old = oldNodes[node];
+			newN[node] = n[old];
+			newW[node] = w[old];
+			newNbChildren[node] = nbChildren[old];
+			newSolved[node] = solved[old];
+			if (nbChildren[old] > 0) {
+				newFirstChild[node] = size;
+				for (int i = 0; i < nbChildren[old]; ++i) {
+					oldNodes[size++] = firstChild[old] + i;
+				}
+			}
+		}
+		n = newN;
+		w = newW;
+		firstChild = newFirstChild;
+		nbChildren = newNbChildren;
+		solved = newSolved;
+		nbNodes = size;
+		Log.debug("Pruned " + (before - nbNodes) + " nodes, " + nbNodes + " left");
+	}
+
+	/**
+	 * Add the expanded nodes of a subtree to a list, in postorder
+	 * @param node The root of the subtree
+	 * @param expanded The list of expanded nodes
+	 */
+	private void collectExpanded(int node, ArrayList<Integer> expanded) {
+		if (nbChildren[node] == 0)
+			return;
+		for (int child = firstChild[node]; child < firstChild[node] + nbChildren[node]; ++child) {
+			collectExpanded(child, expanded);
+		}
+		expanded.add(node);
+	}
+
+	/**
+	 * Apply the MCTS algorithm during at most <code>timeLimitMillis</code> milliseconds to compute
+	 * the MCTS tree statistics.
+	 * @param timeLimitMillis Computation time limit in milliseconds
+	 */
+	public void evaluateTreeWithTimeLimit(int timeLimitMillis) {
+		evaluateTree(SearchLimit.time(timeLimitMillis));
+	}
+
+	/**
+	 * Apply the MCTS algorithm for a fixed number of iterations instead of a time limit
+	 * (deterministic with a seeded random generator).
+	 * @param nbIterations The number of MCTS steps
+	 */
+	public void evaluateTreeWithIterations(int nbIterations) {
+		evaluateTree(SearchLimit.iterations(nbIterations));
+	}
+
+	/**
+	 * Apply the MCTS algorithm until a limit is reached
+	 * @param limit When to stop the search
+	 */
+	public void evaluateTree(SearchLimit limit) {
+		long startTime = System.nanoTime();
+		SearchLimit.Tracker tracker = limit.start(startTime, n[ROOT], nbNodes);
+		convergence.reset();
+		for (long i = 0; !tracker.reached(i, n[ROOT], nbNodes); ++i) {
+			if (nbNodes >= maxNodes) {
+				prune(maxNodes / 2);
+			}
+			if (evaluateTreeOnce()) {
+				Log.debug("Tree fully explored after " + (i + 1) + " iterations");
+				break;
+			}
+			if ((earlyTermination || convergence.isEnabled())
+					&& i % MonteCarloTreeSearch.EARLY_TERMINATION_PERIOD == MonteCarloTreeSearch.EARLY_TERMINATION_PERIOD - 1
+					&& isDecided(tracker.remainingRollouts(i + 1, n[ROOT], nbRolloutsPerEval))) {
+				Log.debug("Best move decided after " + (i + 1) + " iterations");
+				break;
+			}
+		}
+		logStats(startTime);
+	}
+
+	/**
+	 * Check whether the best move can no longer change (see {@link MonteCarloTreeSearch#setEarlyTermination(boolean)}),
+	 * or has converged (see {@link MonteCarloTreeSearch#setConvergenceStop(int)})
+	 * @param remainingRollouts The number of rollouts the search can still run
+	 * @return <code>true</code> if the search can stop
+	 */
+	private boolean isDecided(long remainingRollouts) {
+		int first = firstChild[ROOT];
+		int mostVisited = -1;
+		int n1 = 0, n2 = 0;
+		for (int child = first; child < first + nbChildren[ROOT]; ++child) {
+			if (n[child] > n1) {
+				n2 = n1;
+				n1 = n[child];
+				mostVisited = child;
+			}
+			else if (n[child] > n2) {
+				n2 = n[child];
+			}
+		}
+		// The most visited child is played: it cannot change if no other child can catch up with it
+		// (as far as the estimate of the remaining rollouts holds)
+		int best = bestChild();
+		if (earlyTermination && mostVisited >= 0 && n1 - n2 > remainingRollouts)
+			return true;
+		return convergence.hasConverged(best - first, w[best] / n[best]);
+	}
+
+	/**
+	 * @return The most visited child of the root, ties being broken by the mean value
+	 *         (as in {@link MonteCarloTreeSearch#getBestMove()}; the first child if none)
+	 */
+	private int bestChild() {
+		int first = firstChild[ROOT];
+		int best = first;
+		for (int child = first + 1; child < first + nbChildren[ROOT]; ++child) {
+			if (n[child] > n[best] || (n[child] == n[best] && n[child] > 0 && w[child] / n[child] > w[best] / n[best])) {
+				best = child;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Log the search duration and the root statistics
+	 * @param startTime Value of {@link System#nanoTime()} at the start of the search
+	 */
+	private void logStats(long startTime) {
+		if (Log.isEnabled(Log.Level.INFO)) {
+			Log.info("Stopped search after "
+			       + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + " ms (" + nbNodes + " nodes). "
+			       + "Root stats is " + w[ROOT] + "/" + n[ROOT] + String.format(" (%.2f%% loss)", 100.0*w[ROOT]/n[ROOT]));
+		}
+	}
+
+	/**
+	 * Perform one MCTS step (selection, expansion, simulations, backpropagation)
+	 * @return <code>true</code> if there is no need for further exploration (to speed up end of games):
+	 *         the tree is explored down to ended games on all its paths (the root is solved).
+	 */
+	public boolean evaluateTreeOnce() {
+		Game game = rootGame.canUndo() ? state : rootGame.clone();
+		int node = ROOT;
+		int depth = 0;
+		visitedNodes[depth++] = node;
+
+		// Selection (with UCT tree policy, each player choosing the child that is best for them)
+		while (nbChildren[node] > 0) {
+			int first = firstChild[node];
+			int end = first + nbChildren[node];
+			boolean opponent = game.player() != player;
+			int bestNode = first;
+			double bestUct = 0;
+			for (int child = first; child < end; ++child) {
+				double wins = opponent ? n[child] - w[child] : w[child];
+				double uct = MonteCarloTreeSearch.uct(wins, n[child], n[node]);
+				if (uct > bestUct) {
+					bestUct = uct;
+					bestNode = child;
+				}
+			}
+			game.playMove(bestNode - first);
+			node = bestNode;
+			if (depth == visitedNodes.length) {
+				visitedNodes = Arrays.copyOf(visitedNodes, 2 * depth);
+			}
+			visitedNodes[depth++] = node;
+		}
+
+		// Expansion and simulations (an ended game counts its known result at each visit,
+		// so that a winning move gets visits: the move played is the most visited one)
+		PlayerId winner = game.winner();
+		RolloutResults rollout;
+		if (winner == null) {
+			int count = game.nbPossibleMoves();
+			int first = allocate(count); // (may replace the arrays)
+			firstChild[node] = first;
+			nbChildren[node] = count;
+			rollout = MonteCarloTreeSearch.rollOut(game, nbRolloutsPerEval, rand);
+		}
+		else {
+			rollout = MonteCarloTreeSearch.endedGameResults(winner, nbRolloutsPerEval);
+		}
+		nTotal++;
+
+		// Backpropagation
+		double wins = rollout.nbWins(player);
+		for (int i = 0; i < depth; ++i) {
+			n[visitedNodes[i]] += rollout.n;
+			w[visitedNodes[i]] += wins;
+		}
+		if (winner != null) {
+			markSolved(depth);
+		}
+
+		// Walk the working state back up to the root
+		if (game == state) {
+			for (int i = 1; i < depth; ++i) {
+				game.undo();
+			}
+		}
+		return solved[ROOT];
+	}
+
+	/**
+	 * Mark the last visited node, an ended game, as solved, then its ancestors whose children are all solved
+	 * @param depth The number of visited nodes, from the root
+	 */
+	private void markSolved(int depth) {
+		solved[visitedNodes[depth - 1]] = true;
+		for (int i = depth - 2; i >= 0; --i) {
+			int node = visitedNodes[i];
+			for (int child = firstChild[node]; child < firstChild[node] + nbChildren[node]; ++child) {
+				if (!solved[child])
+					return;
+			}
+			solved[node] = true;
+		}
+	}
+
+	/**
+	 * @return The best move to play from the current MCTS tree state.
+	 */
+	public Move getBestMove() {
+		Move move = rootGame.possibleMoves().get(bestChild() - firstChild[ROOT]);
+		Log.debug("Best move: " + move);
+		return move;
+	}
+
+	/**
+	 * Get a few stats about the MTS tree and the possible moves scores
+	 * @return A string containing MCTS stats
+	 */
+	public String stats() {
+		StringBuilder sb = new StringBuilder("MCTS with " + nTotal + " evals and " + nbNodes + " nodes\n");
+		List<Move> moves = rootGame.possibleMoves();
+		int first = firstChild[ROOT];
+		for (int i = 0; i < nbChildren[ROOT]; ++i) {
+			int child = first + i;
+			sb.append(moves.get(i) + " : " + (w[child]/n[child]) + " (" + w[child] + "/" + n[child] + ")\n");
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,65 @@
+package fr.istic.ia.tp1;
+
+/**
+ * Detection of the convergence of a search: the best move of the root, and its value, have not changed
+ * for a number of consecutive checks (the searches check it every {@link MonteCarloTreeSearch#EARLY_TERMINATION_PERIOD}
+ * iterations).
+ */
+class ConvergenceCheck {
+
+	/** The maximum change of the value of the best move between two checks for the search to be stable */
+	static final double TOLERANCE = 0.01;
+
+	/** The number of consecutive stable checks after which the search has converged (0 to disable) */
+	final int nbStableChecks;
+
+	/** The best move and its value at the previous check */
+	private int lastMove;
+	private double lastValue;
+
+	/** The number of consecutive stable checks so far */
+	private int stableChecks;
+
+	/**
+	 * The constructor
+	 * @param nbStableChecks The number of consecutive stable checks after which the search has converged (0 to disable)
+	 */
+	ConvergenceCheck(int nbStableChecks) {
+		this.nbStableChecks = nbStableChecks;
+		reset();
+	}
+
+	/**
+	 * @return <code>true</code> if the check is enabled
+	 */
+	boolean isEnabled() {
+		return nbStableChecks > 0;
+	}
+
+	/**
+	 * Forget the previous checks (at the start of a search)
+	 */
+	void reset() {
+		lastMove = -1;
+		lastValue = Double.NaN;
+		stableChecks = 0;
+	}
+
+	/**
+	 * Check the root statistics
+	 * @param bestMove The index of the best move
+	 * @param value The value of the best move (mean of its simulations)
+	 * @return <code>true</code> if the best move and its value have been stable for <code>nbStableChecks</code> checks
+	 */
+	boolean hasConverged(int bestMove, double value) {
+		if (bestMove == lastMove && Math.abs(value - lastValue) < TOLERANCE) {
+			stableChecks++;
+		}
+		else {
+			stableChecks = 0;
+		}
+		lastMove = bestMove;
+		lastValue = value;
+		return isEnabled() && stableChecks >= nbStableChecks;
+	}
+}
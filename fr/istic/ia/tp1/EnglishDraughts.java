@@ -38,6 +38,34 @@ public class EnglishDraughts extends Game {
 	 */
 	int nbKingMovesWithoutCapture;
 
+	/**
+	 * The played moves information needed by {@link #undo()}, as a stack of int records
+	 * (see {@link #play(int[], int, int)})
+	 */
+	private int[] history;
+
+	/**
+	 * The number of used cells of <code>history</code>
+	 */
+	private int historySize;
+
+	/**
+	 * Reusable buffer for the move generation (see {@link #moveBuffer()})
+	 */
+	private MoveBuffer moveBuffer;
+
+	/**
+	 * The board modification count and the player for which <code>moveBuffer</code> holds
+	 * the possible moves (see {@link #currentMoves()})
+	 */
+	private int movesModCount;
+	private PlayerId movesPlayer;
+
+	/**
+	 * Reusable tile number buffer for jump paths and moves to play (see {@link #pathBuffer()})
+	 */
+	private int[] pathBuffer;
+
 	/**
 	 * Class representing a move in the English draughts game
 	 * A move is an ArrayList of Integers, corresponding to the successive tile numbers (Manouri notation)
@@ -51,23 +79,76 @@ public class EnglishDraughts extends Game {
 
 		@Override
 		public String toString() {
-			Iterator<Integer> it = this.iterator();
-			Integer from = it.next();
-			StringBuffer sb = new StringBuffer();
-			sb.append(from);
-			while (it.hasNext()) {
-				Integer to = it.next();
-				if (board.neighborDownLeft(from)==to || board.neighborUpLeft(from)==to
-						|| board.neighborDownRight(from)==to || board.neighborUpRight(from)==to) {
-					sb.append('-');
-				}
-				else {
-					sb.append('x');
-				}
-				sb.append(to);
-				from = to;
+			int[] path = new int[size()];
+			for (int i = 0; i < path.length; ++i) {
+				path[i] = get(i);
+			}
+			return pathToString(path, 0, path.length);
+		}
+	}
+
+	/**
+	 * A reusable list of moves in primitive form.
+	 * The tile numbers of all the moves are stored one after the other in a single int array,
+	 * move <code>i</code> spanning from <code>starts[i]</code> to <code>starts[i+1]</code> excluded.
+	 * Once the arrays have grown to their working size, filling the buffer does not allocate anything.
+	 */
+	static class MoveBuffer {
+		/** The tile numbers of all the moves */
+		int[] squares = new int[128];
+
+		/** The start index of each move in <code>squares</code>, followed by the end of the last move */
+		int[] starts = new int[33];
+
+		/** The number of moves */
+		int size;
+
+		/**
+		 * Remove all the moves (keeping the allocated arrays)
+		 */
+		void clear() {
+			size = 0;
+		}
+
+		/**
+		 * @return The number of moves in the buffer
+		 */
+		int size() {
+			return size;
+		}
+
+		/**
+		 * @param i Move index
+		 * @return The number of tiles of the path of the move
+		 */
+		int length(int i) {
+			return starts[i + 1] - starts[i];
+		}
+
+		/**
+		 * @param i Move index
+		 * @param k Step index in the move path
+		 * @return The tile number of step <code>k</code> of move <code>i</code>
+		 */
+		int square(int i, int k) {
+			return squares[starts[i] + k];
+		}
+
+		/**
+		 * Append a move
+		 * @param path Tile numbers of the move
+		 * @param length Number of tiles of the move
+		 */
+		void add(int[] path, int length) {
+			int start = starts[size];
+			if (start + length > squares.length) {
+				squares = Arrays.copyOf(squares, 2 * (start + length));
+			}
+			if (size + 2 > starts.length) {
+				starts = Arrays.copyOf(starts, 2 * starts.length);
 			}
-			return sb.toString();
+			System.arraycopy(path, 0, squares, start, length);
+			starts[++size] = start + length;
 		}
 	}
 
@@ -87,6 +168,8 @@ public class EnglishDraughts extends Game {
 		this.playerId = ONE;
 		this.nbTurn = 1;
 		this.nbKingMovesWithoutCapture = 0;
+		this.history = new int[64];
+		this.historySize = 0;
 	}
 
 	/**
@@ -98,6 +181,8 @@ public class EnglishDraughts extends Game {
 		this.playerId = d.playerId;
 		this.nbTurn = d.nbTurn;
 		this.nbKingMovesWithoutCapture = d.nbKingMovesWithoutCapture;
+		this.history = new int[64];
+		this.historySize = 0;
 	}
 
 	@Override
@@ -105,6 +190,108 @@ public class EnglishDraughts extends Game {
 		return new EnglishDraughts(this);
 	}
 
+	/**
+	 * Get the move buffer of this game, allocated on first use (clones do not share it)
+	 * @return The move buffer
+	 */
+	MoveBuffer moveBuffer() {
+		if (moveBuffer == null) {
+			moveBuffer = new MoveBuffer();
+		}
+		return moveBuffer;
+	}
+
+	/**
+	 * Get the possible moves of the current state, generated at most once per state:
+	 * {@link #winner()}, {@link #possibleMoves()} and {@link #playRandomMove(Random)} all share them.
+	 * @return The move buffer of this game, filled with the possible moves (must not be modified)
+	 */
+	MoveBuffer currentMoves() {
+		MoveBuffer moves = moveBuffer();
+		if (movesPlayer != playerId || movesModCount != board.modCount) {
+			generateMoves(moves);
+			movesPlayer = playerId;
+			movesModCount = board.modCount;
+		}
+		return moves;
+	}
+
+	/**
+	 * Get the path buffer of this game, allocated on first use, long enough for any move of the board
+	 * @return The path buffer
+	 */
+	int[] pathBuffer() {
+		if (pathBuffer == null) {
+			pathBuffer = new int[board.nbPlayableTiles() + 1];
+		}
+		return pathBuffer;
+	}
+
+	/**
+	 * Manouri notation of a move path ('-' between adjacent tiles, 'x' for jumps)
+	 * @param path Array holding the tile numbers of the move
+	 * @param offset Index of the first tile of the move in <code>path</code>
+	 * @param length Number of tiles of the move
+	 * @return The move as a string, e.g. "22-18" or "18x11x4"
+	 */
+	String pathToString(int[] path, int offset, int length) {
+		StringBuffer sb = new StringBuffer();
+		int from = path[offset];
+		sb.append(from);
+		for (int i = offset + 1; i < offset + length; ++i) {
+			int to = path[i];
+			if (board.neighborDownLeft(from)==to || board.neighborUpLeft(from)==to
+					|| board.neighborDownRight(from)==to || board.neighborUpRight(from)==to) {
+				sb.append('-');
+			}
+			else {
+				sb.append('x');
+			}
+			sb.append(to);
+			from = to;
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Two games are equal if they have the same pawns, player and count of moves without capture
+	 * (the turn number and the undo history are not compared). 
+	 * States with different {@link #stateKey()} are rejected without comparing the boards.
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof EnglishDraughts))
+			return false;
+		EnglishDraughts other = (EnglishDraughts) obj;
+		return stateKey() == other.stateKey() && playerId == other.playerId 
+				&& nbKingMovesWithoutCapture == other.nbKingMovesWithoutCapture && board.equals(other.board);
+	}
+
+	@Override
+	public int hashCode() {
+		return Long.hashCode(stateKey());
+	}
+
+	/** Zobrist key of the blacks to move */
+	private static final long ZOBRIST_BLACKS_TO_MOVE = FastRandom.mix(0xB1ACL);
+
+	/** Zobrist key multiplied by the count of moves without capture ({@link #nbKingMovesWithoutCapture}) */
+	private static final long ZOBRIST_KING_MOVES = FastRandom.mix(0x4B1265L) | 1;
+
+	/**
+	 * The Zobrist hash of the board (maintained incrementally by the board on each {@link CheckerBoard#movePawn(int, int)},
+	 * {@link CheckerBoard#removePawn(int)} and {@link CheckerBoard#crownPawn(int)}), combined with the player to move
+	 * and the count of moves without capture ({@link #nbKingMovesWithoutCapture}, despite its name incremented 
+	 * by every move that captures nothing, pawn moves included, and reset by captures). 
+	 * Since each move either increases this count or captures a piece, which cannot be undone,
+	 * a state cannot be reached again from itself: states keyed this way form a directed acyclic graph.
+	 */
+	@Override
+	public long stateKey() {
+		long key = board.zobristHash() ^ (nbKingMovesWithoutCapture * ZOBRIST_KING_MOVES);
+		return (playerId == TWO) ? key ^ ZOBRIST_BLACKS_TO_MOVE : key;
+	}
+
 	@Override
 	public String toString() {
 		StringBuffer sb = new StringBuffer();
@@ -214,6 +401,34 @@ public class EnglishDraughts extends Game {
 	}
 
 
+	/**
+	 * Check if pawns of the current player move in a direction without being kings
+	 * (towards the blacks side for the whites, towards the whites side for the blacks)
+	 * @param direction A {@link CheckerBoard} direction
+	 * @return
+	 */
+	boolean isForward(int direction) {
+		boolean up = direction == CheckerBoard.UP_LEFT || direction == CheckerBoard.UP_RIGHT;
+		return up == (playerId == ONE);
+	}
+
+	/**
+	 * Word <code>w</code> of the bitmask of the current player pawns able to capture.
+	 * Men only jump forward, kings jump in the four directions.
+	 * @param w Bitmask word index
+	 * @return A bitmask word
+	 */
+	long jumpers(int w) {
+		boolean white = playerId == ONE;
+		long mine = white ? board.whites[w] : board.blacks[w];
+		long myKings = mine & board.kings[w];
+		long jumpers = 0;
+		for (int direction = CheckerBoard.UP_LEFT; direction <= CheckerBoard.DOWN_RIGHT; ++direction) {
+			jumpers |= (isForward(direction) ? mine : myKings) & board.jumpers(direction, white, w);
+		}
+		return jumpers;
+	}
+
 	/**
 	 * Generate the list of possible moves
 	 * - first check moves with captures
@@ -222,142 +437,148 @@ public class EnglishDraughts extends Game {
 
 	@Override
 	public List<Move> possibleMoves() {
+		MoveBuffer moves = currentMoves();
 
-		ArrayList<Move> jumpMoves = new ArrayList<>(32);
-		for(int positionsOfMyPawns : this.myPawns()){
-			DraughtsMove draughtsMove = new DraughtsMove();
-			draughtsMove.add(positionsOfMyPawns);
-			this.possibleJumpMoves(draughtsMove, jumpMoves, this.board.isKing(positionsOfMyPawns));
+		ArrayList<Move> result = new ArrayList<>(moves.size());
+		for (int i = 0; i < moves.size(); ++i) {
+			DraughtsMove move = new DraughtsMove();
+			for (int k = 0; k < moves.length(i); ++k) {
+				move.add(moves.square(i, k));
+			}
+			result.add(move);
 		}
+		return result;
+	}
 
+	/**
+	 * Generate the possible moves into a buffer, in the same order as {@link #possibleMoves()},
+	 * without allocating anything.
+	 * @param moves The buffer to fill (cleared first)
+	 * @return The number of possible moves
+	 */
+	int generateMoves(MoveBuffer moves) {
+		moves.clear();
+		if (playerId == PlayerId.NONE)
+			return 0;
 
-		if(jumpMoves.isEmpty()){
-			return this.possibleSimplesMoves();
+		int[] path = pathBuffer();
+		for (int w = 0; w < board.words; ++w) {
+			for (long jumpers = jumpers(w); jumpers != 0; jumpers &= jumpers - 1) {
+				path[0] = CheckerBoard.firstSquare(w, jumpers);
+				this.generateJumpMoves(path, 1, this.board.isKing(path[0]), moves);
+			}
 		}
 
-		return jumpMoves;
+		if(moves.size() == 0){
+			this.generateSimpleMoves(moves);
+		}
+		return moves.size();
 	}
 
-	public List<Move> possibleSimplesMoves(){
-		List<Move> result = new ArrayList<Move>(32);
-
-		for(int positionsOfMyPawns : this.myPawns()){
-			//Case WHITE or BLACK King
-			if((this.playerId==ONE && !this.board.isKing(positionsOfMyPawns)) || ( this.playerId==TWO && this.board.isKing(positionsOfMyPawns))){
-				//Case neighborUpLeft
-				if(this.board.neighborUpLeft(positionsOfMyPawns) !=0 && this.board.isEmpty(this.board.neighborUpLeft(positionsOfMyPawns))){
-					DraughtsMove tmpMove = new DraughtsMove();
-					tmpMove.add(positionsOfMyPawns);
-					tmpMove.add(this.board.neighborUpLeft(positionsOfMyPawns));
-					result.add(tmpMove);
-				}
-				//Case neighborUpRight
-				if(this.board.neighborUpRight(positionsOfMyPawns)!=0 && this.board.isEmpty(this.board.neighborUpRight(positionsOfMyPawns))){
-					DraughtsMove tmpMove = new DraughtsMove();
-					tmpMove.add(positionsOfMyPawns);
-					tmpMove.add(this.board.neighborUpRight(positionsOfMyPawns));
-					result.add(tmpMove);
-
-				}
-			}
-			//Case BLACK or WHITE King
-			else if((this.playerId==TWO && !this.board.isKing(positionsOfMyPawns)) || ( this.playerId==ONE && this.board.isKing(positionsOfMyPawns))){
-				//Case neighborDownLeft
-				if(this.board.neighborDownLeft(positionsOfMyPawns) !=0 && this.board.isEmpty(this.board.neighborDownLeft(positionsOfMyPawns))){
-					DraughtsMove tmpMove = new DraughtsMove();
-					tmpMove.add(positionsOfMyPawns);
-					tmpMove.add(this.board.neighborDownLeft(positionsOfMyPawns));
-					result.add(tmpMove);
-				}
-				//Case neighborDownRight
-				if(this.board.neighborDownRight(positionsOfMyPawns)!=0 && this.board.isEmpty(this.board.neighborDownRight(positionsOfMyPawns))){
-					DraughtsMove tmpMove = new DraughtsMove();
-					tmpMove.add(positionsOfMyPawns);
-					tmpMove.add(this.board.neighborDownRight(positionsOfMyPawns));
-					result.add(tmpMove);
+	/**
+	 * Append the displacement moves (without capture) to a buffer
+	 * @param moves The buffer to fill
+	 */
+	void generateSimpleMoves(MoveBuffer moves){
+		int[] path = pathBuffer();
+		boolean white = playerId == ONE;
+		for (int w = 0; w < board.words; ++w) {
+			long mine = white ? board.whites[w] : board.blacks[w];
+			long myKings = mine & board.kings[w];
+			//WHITE men and BLACK kings go up, BLACK men and WHITE kings go down
+			long up = (white ? mine & ~myKings : myKings)
+					& (board.stepMovers(CheckerBoard.UP_LEFT, w) | board.stepMovers(CheckerBoard.UP_RIGHT, w));
+			long down = (white ? myKings : mine & ~myKings)
+					& (board.stepMovers(CheckerBoard.DOWN_LEFT, w) | board.stepMovers(CheckerBoard.DOWN_RIGHT, w));
+
+			for (long movers = up | down; movers != 0; movers &= movers - 1) {
+				path[0] = CheckerBoard.firstSquare(w, movers);
+				int first = (up & movers & -movers) != 0 ? CheckerBoard.UP_LEFT : CheckerBoard.DOWN_LEFT;
+				for (int direction = first; direction <= first + 1; ++direction) {
+					path[1] = this.board.neighbor(direction, path[0]);
+					if (path[1] != 0 && this.board.isEmpty(path[1])) {
+						moves.add(path, 2);
+					}
 				}
 			}
 		}
-		return result;
 	}
 
-	public void possibleJumpMoves(DraughtsMove lastMove, ArrayList<Move> resultJumpMoves, boolean king){
-
-		int jumpPosition;
-		int ennemyPosition;
+	/**
+	 * Append the capture moves continuing a jump path to a buffer (recursively, for multiple captures).
+	 * The jumping pawn stays on its origin tile during the search, and cannot land twice on the same tile.
+	 * @param path The tiles of the path so far; its cells beyond <code>length</code> are overwritten
+	 * @param length The number of tiles of the path so far
+	 * @param king Whether the jumping pawn is a king
+	 * @param moves The buffer to fill
+	 */
+	void generateJumpMoves(int[] path, int length, boolean king, MoveBuffer moves){
 
+		int lastPosition = path[length-1];
 		boolean placed = false;
-		//Case WHITE or BLACK King
 
-		if(this.playerId==ONE || king ){
-			//Check if neighborUpLeft and neighborUpLeft(neighborUpLeft) are in the board and if neighborUpLeft(neighborUpLeft) is empty
+		//Men jump forward only, kings in the four directions
+		for (int direction = CheckerBoard.UP_LEFT; direction <= CheckerBoard.DOWN_RIGHT; ++direction) {
+			if (!king && !isForward(direction))
+				continue;
 
+			int jumpPosition = this.board.jumpLanding(direction, lastPosition);
+			int ennemyPosition = this.board.neighbor(direction, lastPosition);
 
-
-			jumpPosition = this.board.neighborUpLeft(this.board.neighborUpLeft(lastMove.get(lastMove.size()-1)));
-			ennemyPosition = this.board.neighborUpLeft(lastMove.get(lastMove.size()-1));
-
-			if(ennemyPosition !=0 && jumpPosition!=0 && this.board.isEmpty(jumpPosition) && !lastMove.contains(jumpPosition) && this.isAdversary(ennemyPosition)){
-				DraughtsMove tmpLastMove = new DraughtsMove();
-				tmpLastMove.addAll(lastMove);
-				tmpLastMove.add(jumpPosition);
-				//resultJumpMoves.add(tmpLastMove);
+			if(jumpPosition!=0 && this.board.isEmpty(jumpPosition) && !pathContains(path, length, jumpPosition) && this.isAdversary(ennemyPosition)){
+				path[length] = jumpPosition;
 				placed = true;
-				this.possibleJumpMoves(tmpLastMove,resultJumpMoves,king);
-			}
-
-			//Check if neighborUpRight and neighborUpRight(neighborUpRight) are in the board and if neighborUpRight(neighborUpRight) is empty
-
-			jumpPosition = this.board.neighborUpRight(this.board.neighborUpRight(lastMove.get(lastMove.size()-1)));
-			ennemyPosition = this.board.neighborUpRight(lastMove.get(lastMove.size()-1));
-
-			if(ennemyPosition !=0 && jumpPosition!=0 && this.board.isEmpty(jumpPosition) && !lastMove.contains(jumpPosition) && this.isAdversary(ennemyPosition)){
-				DraughtsMove tmpLastMove = new DraughtsMove();
-				tmpLastMove.addAll(lastMove);
-				tmpLastMove.add(jumpPosition);
-				//resultJumpMoves.add(tmpLastMove);
-				placed = true;
-				this.possibleJumpMoves(tmpLastMove,resultJumpMoves,king);
+				this.generateJumpMoves(path, length + 1, king, moves);
 			}
 		}
-		if(this.playerId==TWO || king ){
-			//Check if neighborDownLeft and neighborDownLeft(neighborDownLeft) are in the board and if neighborDownLeft(neighborDownLeft) is empty
-
-			jumpPosition = this.board.neighborDownLeft(this.board.neighborDownLeft(lastMove.get(lastMove.size()-1)));
-			ennemyPosition = this.board.neighborDownLeft(lastMove.get(lastMove.size()-1));
 
-			if(ennemyPosition !=0 && jumpPosition!=0 && this.board.isEmpty(jumpPosition) && !lastMove.contains(jumpPosition) && this.isAdversary(ennemyPosition)){
-				DraughtsMove tmpLastMove = new DraughtsMove();
-				tmpLastMove.addAll(lastMove);
-				tmpLastMove.add(jumpPosition);
-				//resultJumpMoves.add(tmpLastMove);
-				placed = true;
-				this.possibleJumpMoves(tmpLastMove,resultJumpMoves,king);
-			}
-			//Check if neighborUpRight and neighborUpRight(neighborUpRight) are in the board and if neighborUpRight(neighborUpRight) is empty
-
-			jumpPosition = this.board.neighborDownRight(this.board.neighborDownRight(lastMove.get(lastMove.size()-1)));
-			ennemyPosition = this.board.neighborDownRight(lastMove.get(lastMove.size()-1));
-
-			if(ennemyPosition !=0 && jumpPosition!=0 && this.board.isEmpty(jumpPosition) && !lastMove.contains(jumpPosition) && this.isAdversary(ennemyPosition)){
-				DraughtsMove tmpLastMove = new DraughtsMove();
-				tmpLastMove.addAll(lastMove);
-				tmpLastMove.add(jumpPosition);
-				//resultJumpMoves.add(tmpLastMove);
-				placed = true;
-				this.possibleJumpMoves(tmpLastMove,resultJumpMoves,king);
-			}
+		if(!placed && length>1){
+			moves.add(path, length);
 		}
+	}
 
-		if(!placed && lastMove.size()>1){
-			resultJumpMoves.add(lastMove);
+	/**
+	 * Check if a tile is already in a path
+	 * @param path The path tiles
+	 * @param length The number of tiles of the path
+	 * @param square Tile number
+	 * @return
+	 */
+	static boolean pathContains(int[] path, int length, int square) {
+		for (int i = 0; i < length; ++i) {
+			if (path[i] == square)
+				return true;
 		}
+		return false;
 	}
 
+	@Override
+	public boolean playRandomMove(Random rand) {
+		MoveBuffer moves = currentMoves();
+		if (moves.size() == 0)
+			return false;
+		play(moves, rand.nextInt(moves.size()));
+		return true;
+	}
 
+	@Override
+	public int nbPossibleMoves() {
+		return currentMoves().size();
+	}
 
+	@Override
+	public void playMove(int index) {
+		play(currentMoves(), index);
+	}
 
-
+	/**
+	 * Play a move of a buffer filled by {@link #generateMoves(MoveBuffer)}
+	 * @param moves The move buffer
+	 * @param i The index of the move to play
+	 */
+	void play(MoveBuffer moves, int i) {
+		play(moves.squares, moves.starts[i], moves.length(i));
+	}
 
 	@Override
 
@@ -370,41 +591,79 @@ public class EnglishDraughts extends Game {
 			return;
 		// Cast and apply the move
 		DraughtsMove move = (DraughtsMove) aMove;
+		int[] path = pathBuffer();
+		for (int i = 0; i < move.size(); ++i) {
+			path[i] = move.get(i);
+		}
+		play(path, 0, move.size());
+	}
 
+	/**
+	 * Play a move given as a path of tile numbers (see {@link #play(Move)})
+	 * @param path Array holding the tile numbers of the move
+	 * @param offset Index of the first tile of the move in <code>path</code>
+	 * @param length Number of tiles of the move
+	 */
+	void play(int[] path, int offset, int length) {
+		// Player should be valid
+		if (playerId == PlayerId.NONE)
+			return;
+		int from = path[offset];
+		int to = path[offset + length - 1];
+		// Undo record: (square, pawn) of each capture, then from, to, crowned, nbKingMovesWithoutCapture, nbCaptures
+		if (historySize + 2 * length + 5 > history.length) {
+			history = Arrays.copyOf(history, 2 * (historySize + 2 * length + 5));
+		}
+		int nbCaptures = 0;
+		int previousNbKingMoves = nbKingMovesWithoutCapture;
+		boolean wasKing = this.board.isKing(from);
+		// Only build trace messages when requested (play runs inside every random playout)
+		boolean trace = Log.isEnabled(Log.Level.TRACE);
+
+		if (trace) {
+			Log.trace("Play "+pathToString(path, offset, length));
+			Log.trace("Move from "+from+" to "+to);
+		}
 
-		System.out.println("Play "+move.toString());
-
-		System.out.println("Move from "+move.get(0)+" to "+(move.get(move.size()-1)));
-
-		this.board.movePawn(move.get(0),(move.get(move.size()-1)));
+		this.board.movePawn(from,to);
 		// Move pawn and capture opponents
 
-		if(move.size()==2 && this.board.squareBetween(move.get(0),move.get(1))==0){
+		if(length==2 && this.board.squareBetween(from,to)==0){
 			nbKingMovesWithoutCapture++;
 		}
 		else{
 			nbKingMovesWithoutCapture=0;
 		}
 
-		for(int i = 1; i<move.size();i++){
-			if(this.board.squareBetween(move.get(i-1),move.get(i))!=0){
-				System.out.println("Square exist between "+(i-1)+" and "+i);
+		for(int i = 1; i<length;i++){
+			int captured = this.board.squareBetween(path[offset+i-1],path[offset+i]);
+			if(captured!=0){
+				if (trace) Log.trace("Square exist between "+(i-1)+" and "+i);
 
-				this.board.removePawn(this.board.squareBetween(move.get(i-1),move.get(i)));
+				history[historySize++] = captured;
+				history[historySize++] = this.board.get(captured);
+				nbCaptures++;
+				this.board.removePawn(captured);
 			}
 
 
-			if(playerId==ONE && this.board.inTopRow(move.get(i))){
-				System.out.println("Square at top of board, now he's a king");
+			if(playerId==ONE && this.board.inTopRow(path[offset+i])){
+				if (trace) Log.trace("Square at top of board, now he's a king");
 
-				this.board.crownPawn(move.get(move.size()-1));
+				this.board.crownPawn(to);
 			}
-			if(playerId==TWO && this.board.inBottomRow(move.get(i))){
-				this.board.crownPawn(move.get(move.size()-1));
+			if(playerId==TWO && this.board.inBottomRow(path[offset+i])){
+				this.board.crownPawn(to);
 			}
 		}
 
-		System.out.println("Last player : " + playerId);
+		history[historySize++] = from;
+		history[historySize++] = to;
+		history[historySize++] = (!wasKing && this.board.isKing(to)) ? 1 : 0;
+		history[historySize++] = previousNbKingMoves;
+		history[historySize++] = nbCaptures;
+
+		if (trace) Log.trace("Last player : " + playerId);
 		if(playerId==TWO){
 			this.playerId=PlayerId.ONE;
 		}
@@ -412,22 +671,39 @@ public class EnglishDraughts extends Game {
 			this.playerId=PlayerId.TWO;
 		}
 
-		System.out.println("New player : " + playerId);
+		if (trace) Log.trace("New player : " + playerId);
 
 		this.nbTurn++;
+	}
 
+	@Override
+	public boolean canUndo() {
+		return true;
+	}
 
+	@Override
+	public void undo() {
+		if (historySize == 0)
+			throw new IllegalStateException("No move to undo");
+		int nbCaptures = history[--historySize];
+		nbKingMovesWithoutCapture = history[--historySize];
+		boolean crowned = history[--historySize] != 0;
+		int to = history[--historySize];
+		int from = history[--historySize];
+
+		this.board.movePawn(to, from);
+		if (crowned) {
+			this.board.set(from, this.board.isWhite(from) ? CheckerBoard.WHITE_CHECKER : CheckerBoard.BLACK_CHECKER);
+		}
+		for (int i = 0; i < nbCaptures; ++i) {
+			historySize -= 2;
+			this.board.set(history[historySize], (byte) history[historySize + 1]);
+		}
 
-
-		// Promote to king if the pawn ends on the opposite of the board
-
-		// Next player
-
-		// Update nbTurn
-
-		// Keep track of successive moves with kings wthout capture
-
+		this.playerId = this.playerId.other();
+		this.nbTurn--;
 	}
+
 	@Override
 	public PlayerId player() {
 		return playerId;
@@ -445,13 +721,13 @@ public class EnglishDraughts extends Game {
 		//
 		// TODO implement winner
 		//
-		if(this.board.getBlackPawns().isEmpty()){
+		if(this.board.nbBlackPawns() == 0){
 			return playerId.ONE;
 		}
-		if(this.board.getWhitePawns().isEmpty()){
+		if(this.board.nbWhitePawns() == 0){
 			return playerId.TWO;
 		}
-		else if(this.possibleMoves().isEmpty()){
+		else if(this.currentMoves().size() == 0){
 			return this.player().other();
 		}
 		else if(nbKingMovesWithoutCapture>=25){
@@ -0,0 +1,113 @@
+package fr.istic.ia.tp1;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fast random generator (SplitMix64) for random playouts, to be used by a single thread.
+ *
+ * It extends {@link Random} so that it can be passed wherever a Random is expected, but its state is a plain
+ * <code>long</code>: unlike Random (synchronized on an atomic seed), it must not be shared between threads.
+ * Use one instance per thread, e.g. {@link #current()}, or explicitly seeded ones for reproducible runs.
+ */
+public class FastRandom extends Random {
+
+	private static final long serialVersionUID = 2697139712858306178L;
+
+	/** The increment of the state (golden ratio), also used to seed the generators created without seed */
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+	/** The source of the seeds of the generators created without seed */
+	private static final AtomicLong SEEDS = new AtomicLong(mix(System.nanoTime()));
+
+	/** The generator of each thread */
+	private static final ThreadLocal<FastRandom> CURRENT = ThreadLocal.withInitial(FastRandom::new);
+
+	/** The state, incremented by {@link #GOLDEN_GAMMA} for each number */
+	private long state;
+
+	/**
+	 * Create a generator with a seed different from the ones of the other generators created without seed
+	 */
+	public FastRandom() {
+		this(mix(SEEDS.getAndAdd(GOLDEN_GAMMA)));
+	}
+
+	/**
+	 * Create a generator with a given seed: generators with the same seed generate the same numbers
+	 * @param seed The seed
+	 */
+	public FastRandom(long seed) {
+		super(seed);
+		this.state = seed;
+	}
+
+	/**
+	 * Get the generator of the calling thread
+	 * @return The generator of the current thread
+	 */
+	public static FastRandom current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Mix the bits of a 64-bit value (SplitMix64 finalizer), e.g. to derive random-looking keys from a counter
+	 * @param z The value
+	 * @return The mixed value
+	 */
+	static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	@Override
+	public void setSeed(long seed) {
+		// Also called by the constructor of Random
+		state = seed;
+	}
+
+	@Override
+	public long nextLong() {
+		return mix(state += GOLDEN_GAMMA);
+	}
+
+	@Override
+	protected int next(int bits) {
+		return (int) (nextLong() >>> (64 - bits));
+	}
+
+	@Override
+	public int nextInt() {
+		return (int) (nextLong() >>> 32);
+	}
+
+	/**
+	 * Get a random number in [0, bound), without modulo bias: the 32-bit random number is multiplied by
+	 * <code>bound</code> and the high word is kept, the (rare) numbers of the incomplete last interval being rejected
+	 * (D. Lemire, "Fast random integer generation in an interval").
+	 */
+	@Override
+	public int nextInt(int bound) {
+		if (bound <= 0)
+			throw new IllegalArgumentException("bound must be positive");
+		long m = (nextLong() >>> 32) * bound;
+		if ((m & 0xFFFFFFFFL) < bound) {
+			long threshold = (1L << 32) % bound;
+			while ((m & 0xFFFFFFFFL) < threshold) {
+				m = (nextLong() >>> 32) * bound;
+			}
+		}
+		return (int) (m >>> 32);
+	}
+
+	@Override
+	public double nextDouble() {
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+
+	@Override
+	public boolean nextBoolean() {
+		return nextLong() < 0;
+	}
+}
@@ -1,6 +1,7 @@
 package fr.istic.ia.tp1;
 
 import java.util.List;
+import java.util.Random;
 
 /**
  * An abstract class representing a two-player game.
@@ -62,6 +63,67 @@ public abstract class Game implements Cloneable {
 	 */
 	public abstract void play(Move move);
 	
+	/**
+	 * Get the number of possible moves from the current state
+	 * @return The size of {@link #possibleMoves()}
+	 */
+	public int nbPossibleMoves() {
+		return possibleMoves().size();
+	}
+	
+	/**
+	 * Play a possible move given by its index, so that a move can be stored as a small integer.
+	 * Games can override it to play the move without building the list of {@link Move} objects.
+	 * @param index The index of the move in {@link #possibleMoves()}
+	 */
+	public void playMove(int index) {
+		play(possibleMoves().get(index));
+	}
+	
+	/**
+	 * Check if the game implements {@link #undo()}.
+	 * @return <code>true</code> if played moves can be undone
+	 */
+	public boolean canUndo() {
+		return false;
+	}
+	
+	/**
+	 * Undo the last move played, restoring exactly the game state before it was played
+	 * (pawns, current player, counters...). Moves are undone in reverse order of play, 
+	 * down to the state in which the game was created or cloned.
+	 * Only available if {@link #canUndo()} returns <code>true</code>.
+	 */
+	public void undo() {
+		throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support undo");
+	}
+	
+	/**
+	 * Play a move chosen uniformly at random among the possible moves (used by random playouts).
+	 * Games can override it to pick the move without building the list of {@link Move} objects.
+	 * @param rand The random generator to use
+	 * @return <code>false</code> if there is no possible move (nothing is played)
+	 */
+	public boolean playRandomMove(Random rand) {
+		List<Move> moves = possibleMoves();
+		if (moves.isEmpty())
+			return false;
+		play(moves.get(rand.nextInt(moves.size())));
+		return true;
+	}
+	
+	/**
+	 * Get a 64-bit key of the current state, used to detect the same state reached by different 
+	 * sequences of moves (transpositions). Equal states must have equal keys, and different states 
+	 * should have different keys with a very high probability (e.g. a Zobrist hash).
+	 * Games should maintain it incrementally as moves are played and undone, and derive
+	 * {@link #equals(Object)} and {@link #hashCode()} from it.
+	 * (The identity hash code of a game without its own {@link #hashCode()} would make every state different,
+	 * and the transposition table of {@link MonteCarloTreeSearch} useless: each game must provide its key.)
+	 * @return The key of the current state
+	 */
+	public abstract long stateKey();
+	
 	/**
 	 * Get the PlayerID of the current player
 	 * @return The PlayerId of the current player
@@ -0,0 +1,102 @@
+package fr.istic.ia.tp1;
+
+import java.util.function.Consumer;
+
+/**
+ * A minimal logging facility with a global level and a pluggable sink.
+ *
+ * Messages are only built when their level is enabled: callers on hot paths (e.g. {@link Game#play(Game.Move)}
+ * during random playouts) must test {@link #isEnabled(Level)} before building the message string.
+ * By default, only {@link Level#INFO} messages are written, on the standard output.
+ */
+public final class Log {
+	/**
+	 * Verbosity levels, from the most silent to the most verbose
+	 */
+	public static enum Level {
+		/** No message at all */
+		OFF,
+		/** A few messages per move (e.g. search statistics) */
+		INFO,
+		/** Details of the decisions of the players */
+		DEBUG,
+		/** Trace of every move played, including inside searches */
+		TRACE
+	}
+
+	/** The current level */
+	private static volatile Level level = Level.INFO;
+
+	/** The current sink */
+	private static volatile Consumer<String> sink = System.out::println;
+
+	private Log() {
+	}
+
+	/**
+	 * Set the verbosity level
+	 * @param newLevel The most verbose level whose messages are written
+	 */
+	public static void setLevel(Level newLevel) {
+		level = newLevel;
+	}
+
+	/**
+	 * @return The current verbosity level
+	 */
+	public static Level level() {
+		return level;
+	}
+
+	/**
+	 * Set the destination of the messages
+	 * @param newSink A consumer receiving each message (without line terminator)
+	 */
+	public static void setSink(Consumer<String> newSink) {
+		sink = newSink;
+	}
+
+	/**
+	 * Check if the messages of a level are written
+	 * @param messageLevel Level of a message (not {@link Level#OFF})
+	 * @return <code>true</code> if messages of this level are written
+	 */
+	public static boolean isEnabled(Level messageLevel) {
+		return messageLevel.compareTo(level) <= 0;
+	}
+
+	/**
+	 * Write a message if its level is enabled
+	 * @param messageLevel Level of the message (not {@link Level#OFF})
+	 * @param message The message
+	 */
+	public static void log(Level messageLevel, String message) {
+		if (isEnabled(messageLevel)) {
+			sink.accept(message);
+		}
+	}
+
+	/**
+	 * Write a {@link Level#INFO} message
+	 * @param message The message
+	 */
+	public static void info(String message) {
+		log(Level.INFO, message);
+	}
+
+	/**
+	 * Write a {@link Level#DEBUG} message
+	 * @param message The message
+	 */
+	public static void debug(String message) {
+		log(Level.DEBUG, message);
+	}
+
+	/**
+	 * Write a {@link Level#TRACE} message
+	 * @param message The message
+	 */
+	public static void trace(String message) {
+		log(Level.TRACE, message);
+	}
+}
@@ -1,7 +1,18 @@
 package fr.istic.ia.tp1;
 
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
 import fr.istic.ia.tp1.Game.Move;
@@ -88,6 +99,21 @@ public class MainGameLoop {
 		list.add( new NamedSupplier<Player>("MCTS 2 s",  () -> new PlayerMCTS(2000))   );
 		list.add( new NamedSupplier<Player>("MCTS 5 s",  () -> new PlayerMCTS(5000))   );
 		list.add( new NamedSupplier<Player>("MCTS 10 s", () -> new PlayerMCTS(10000))  );
+		list.add( new NamedSupplier<Player>("MCTS 1 s, pondering", () -> {
+				PlayerMCTS player = new PlayerMCTS(1000);
+				player.setPondering(true);
+				return player;
+			}) );
+		list.add( new NamedSupplier<Player>("MCTS 1 s, compact tree", () -> {
+				PlayerMCTS player = new PlayerMCTS(1000);
+				player.setCompactTree(true);
+				return player;
+			}) );
+		list.add( new NamedSupplier<Player>("MCTS 1 s, all cores", () -> new PlayerMCTS(1000, Runtime.getRuntime().availableProcessors())) );
+		list.add( new NamedSupplier<Player>("MCTS 1 s, all cores, shared tree", 
+				() -> new PlayerMCTS(1000, Runtime.getRuntime().availableProcessors(), PlayerMCTS.Parallelism.TREE)) );
+		list.add( new NamedSupplier<Player>("MCTS 1 s, all cores, parallel rollouts", 
+				() -> new PlayerMCTS(1000, Runtime.getRuntime().availableProcessors(), PlayerMCTS.Parallelism.LEAF)) );
 
 		System.out.println("Select player type for " + name + ":");
 		return chooseInList(list).get();
@@ -108,26 +134,179 @@ public class MainGameLoop {
 	}
 
 	/**
-	 * Two-player gameplay program entry point (main)
-	 *
-	 * - The program first instanciates a Game from user input, and then two Players based on user choice.
-	 * - Then the game loop starts, letting both players play until the end of the game
-	 * - The winner (or equality) is finally displayed before the program quits.
-	 * @param args
+	 * Create a {@link Game} factory from its name, for the non-interactive programs (e.g. {@link Arena})
+	 * @param spec "draughts" followed by the board size (see {@link CheckerBoard#CheckerBoard(int)}, 
+	 *        e.g. "draughts6", 8 by default), or "tictactoe"
+	 * @return The game factory
+	 * @throws IllegalArgumentException If the name is unknown
 	 */
-	public static void main(String[] args) {
-		System.out.println("English Draughts - M1 IL ISTIC - TP IA");
+	static NamedSupplier<Game> gameSupplier(String spec) {
+		if (spec.equals("tictactoe"))
+			return new NamedSupplier<Game>("Tic-tac-toe", () -> new TicTacToe());
+		if (!spec.startsWith("draughts"))
+			throw new IllegalArgumentException("Unknown game: " + spec);
 		
-		// Create a new game
-		Game game = chooseAndCreateGame();
+		String sizeSpec = spec.substring("draughts".length());
+		int size;
+		try {
+			size = sizeSpec.isEmpty() ? 8 : Integer.parseInt(sizeSpec);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Unknown game: " + spec);
+		}
+		if (size < 4 || size > 12 || size % 2 != 0)
+			throw new IllegalArgumentException("Invalid board size " + size + " (4, 6, 8, 10 or 12)");
+		if (size == 8)
+			return new NamedSupplier<Game>("English Draughts (8x8)", () -> new EnglishDraughts());
+		return new NamedSupplier<Game>("English Draughts on " + size + "x" + size, () -> new EnglishDraughts(size));
+	}
+	
+	/**
+	 * Create a {@link Player} factory from a description, for the non-interactive programs (e.g. {@link Arena}).
+	 * The description is a player type followed by options: "human", "human:list" (with the list of moves), 
+	 * "random", "random:seed=3", "mcts" (1 s), 
+	 * "mcts:time=100,threads=4,parallelism=tree", with the {@link PlayerMCTS} options
+	 * <code>time</code> (ms), <code>threads</code>, <code>parallelism</code> (root, tree or leaf), <code>rollouts</code>
+	 * (per leaf), <code>seed</code>, <code>nodes</code> (node budget), <code>reuse</code>, <code>pondering</code>
+	 * and <code>compact</code> (the last three being booleans, "pondering" alone meaning "pondering=true").
+	 * The search of a move stops after the given <code>time</code>, or at the first of the limits 
+	 * <code>time</code>, <code>iterations</code>, <code>maxrollouts</code> and <code>maxnodes</code> (new nodes)
+	 * given (see {@link SearchLimit}). With <code>gametime</code> (ms, and <code>increment</code> per move), 
+	 * the player has a clock for the whole game instead of a time per move (see {@link TimeManager}).
+	 * <code>earlystop</code> enables the early termination of the searches whose best move can no longer change
+	 * (estimated with a time limit), and <code>stablechecks</code>
+	 * stops the searches whose best move has been stable for this number of checks.
+	 * @param spec The player description
+	 * @return The player factory, named after the description
+	 * @throws IllegalArgumentException If the description is invalid
+	 */
+	static NamedSupplier<Player> playerSupplier(String spec) {
+		int colon = spec.indexOf(':');
+		String type = (colon < 0) ? spec : spec.substring(0, colon);
+		Map<String, String> options = new LinkedHashMap<>();
+		if (colon >= 0) {
+			for (String option : spec.substring(colon + 1).split(",")) {
+				int equal = option.indexOf('=');
+				if (equal < 0) {
+					options.put(option.trim(), "true");
+				}
+				else {
+					options.put(option.substring(0, equal).trim(), option.substring(equal + 1).trim());
+				}
+			}
+		}
 		
-		// Create the two players
-		Player player1 = chooseAndCreatePlayer(game.playerName(PlayerId.ONE));
-		Player player2 = chooseAndCreatePlayer(game.playerName(PlayerId.TWO));
+		switch (type) {
+		case "human": {
+			boolean displayChoices = Boolean.parseBoolean(options.getOrDefault("list", "false"));
+			options.remove("list");
+			checkNoOption(spec, options);
+			return new NamedSupplier<Player>(spec, () -> new PlayerHuman(displayChoices));
+		}
+		case "random": {
+			String seed = options.remove("seed");
+			checkNoOption(spec, options);
+			return new NamedSupplier<Player>(spec, () -> (seed == null) ? new PlayerRandom() : new PlayerRandom(Long.parseLong(seed)));
+		}
+		case "mcts": {
+			int time = Integer.parseInt(options.getOrDefault("time", "1000"));
+			int threads = Integer.parseInt(options.getOrDefault("threads", "1"));
+			PlayerMCTS.Parallelism parallelism = 
+					PlayerMCTS.Parallelism.valueOf(options.getOrDefault("parallelism", "root").toUpperCase());
+			options.keySet().removeAll(Arrays.asList("threads", "parallelism"));
+			Map<String, String> settings = new LinkedHashMap<>(options);
+			// Fail now rather than in the factory
+			configure(new PlayerMCTS(time, threads, parallelism), spec, options);
+			return new NamedSupplier<Player>(spec, 
+					() -> configure(new PlayerMCTS(time, threads, parallelism), spec, new LinkedHashMap<>(settings)));
+		}
+		default:
+			throw new IllegalArgumentException("Unknown player type: " + type);
+		}
+	}
+	
+	/**
+	 * Apply the options of a player description to a {@link PlayerMCTS}
+	 * @param player The player
+	 * @param spec The player description (for error messages)
+	 * @param options The remaining options (consumed)
+	 * @return The player
+	 */
+	private static PlayerMCTS configure(PlayerMCTS player, String spec, Map<String, String> options) {
+		String value;
+		if ((value = options.remove("rollouts")) != null)   player.setRolloutsPerEval(Integer.parseInt(value));
+		SearchLimit limit = null;
+		if ((value = options.remove("time")) != null)        limit = or(limit, SearchLimit.time(Long.parseLong(value)));
+		if ((value = options.remove("iterations")) != null)  limit = or(limit, SearchLimit.iterations(Long.parseLong(value)));
+		if ((value = options.remove("maxrollouts")) != null) limit = or(limit, SearchLimit.rollouts(Long.parseLong(value)));
+		if ((value = options.remove("maxnodes")) != null)    limit = or(limit, SearchLimit.nodes(Long.parseLong(value)));
+		player.setSearchLimit(limit);
+		if ((value = options.remove("earlystop")) != null)   player.setEarlyTermination(Boolean.parseBoolean(value));
+		if ((value = options.remove("stablechecks")) != null) player.setConvergenceStop(Integer.parseInt(value));
+		if ((value = options.remove("gametime")) != null) {
+			player.setGameTime(Long.parseLong(value), Long.parseLong(options.getOrDefault("increment", "0")));
+			options.remove("increment");
+		}
+		if ((value = options.remove("seed")) != null)       player.setSeed(Long.parseLong(value));
+		if ((value = options.remove("nodes")) != null)      player.setNodeBudget(Integer.parseInt(value));
+		if ((value = options.remove("reuse")) != null)      player.setTreeReuse(Boolean.parseBoolean(value));
+		if ((value = options.remove("pondering")) != null)  player.setPondering(Boolean.parseBoolean(value));
+		if ((value = options.remove("compact")) != null)    player.setCompactTree(Boolean.parseBoolean(value));
+		checkNoOption(spec, options);
+		return player;
+	}
+	
+	/**
+	 * @param limit A search limit, or null
+	 * @param other Another search limit
+	 * @return The combination of both limits
+	 */
+	private static SearchLimit or(SearchLimit limit, SearchLimit other) {
+		return (limit == null) ? other : limit.or(other);
+	}
+	
+	/**
+	 * @param spec The player description
+	 * @param options The options not recognized
+	 * @throws IllegalArgumentException If there is an option left
+	 */
+	private static void checkNoOption(String spec, Map<String, String> options) {
+		if (!options.isEmpty())
+			throw new IllegalArgumentException("Unknown options " + options.keySet() + " in player " + spec);
+	}
+	
+	/**
+	 * The output formats of a game
+	 */
+	static enum Output {
+		/** The board before each move, the moves and the winner (as in the interactive mode) */
+		TEXT,
+		/** One line per move, and the winner */
+		MOVES,
+		/** A single JSON object with the game, the players, the moves and the winner */
+		JSON
+	}
+	
+	/**
+	 * Play a game until its end
+	 * @param game The initial game state (modified)
+	 * @param player1 The player of {@link PlayerId#ONE}
+	 * @param player2 The player of {@link PlayerId#TWO}
+	 * @param output The output format
+	 * @param moves The list receiving the moves played, or null
+	 * @return The winner, or null if a player could not play
+	 */
+	static PlayerId playGame(Game game, Player player1, Player player2, Output output, List<String> moves) {
+		for (Player player : new Player[] { player1, player2 }) {
+			if (player instanceof PlayerMCTS) {
+				((PlayerMCTS) player).newGame();
+			}
+		}
 		
 		// Game loop until the end of the game
 		while (game.winner() == null) {
-			System.out.print(game.view());
+			if (output == Output.TEXT) {
+				System.out.print(game.view());
+			}
 
 			// Get the move from the Player object
 			Move move = null;
@@ -145,19 +324,200 @@ public class MainGameLoop {
 			// Exit if something went wrong
 			if (move == null) {
 				System.out.println("Error, " + game.playerName(game.player())+  " cannot play. Abort.");
-				return;
+				return null;
 			}
 
 			// Display the chosen move
-			System.out.println("> " + game.playerName(game.player()) + " played " + move);
-			System.out.println();
+			if (output == Output.TEXT) {
+				System.out.println("> " + game.playerName(game.player()) + " played " + move);
+				System.out.println();
+			}
+			else if (output == Output.MOVES) {
+				System.out.println(game.playerName(game.player()) + ": " + move);
+			}
+			if (moves != null) {
+				moves.add(move.toString());
+			}
 			
 			// Update the game state with the chosen move
 			game.play(move);
 		}
 		
 		// Display the winner
-		System.out.println(game.view());
-		System.out.println(game.playerName(game.winner()) + " wins!");
+		if (output == Output.TEXT) {
+			System.out.println(game.view());
+		}
+		if (output != Output.JSON) {
+			System.out.println(game.playerName(game.winner()) + " wins!");
+		}
+		return game.winner();
+	}
+	
+	/**
+	 * Release the threads of the players that have some (see {@link PlayerMCTS#close()})
+	 * @param players The players (null for a player not created)
+	 */
+	static void close(Player... players) {
+		for (Player player : players) {
+			if (player instanceof PlayerMCTS) {
+				((PlayerMCTS) player).close();
+			}
+		}
+	}
+	
+	/**
+	 * Quote a string for JSON, escaping the quotes, backslashes and control characters
+	 * @param s The string
+	 * @return The JSON string literal
+	 */
+	static String jsonString(String s) {
+		StringBuilder sb = new StringBuilder("\"");
+		for (int i = 0; i < s.length(); ++i) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '"':  sb.append("\\\""); break;
+			case '\\': sb.append("\\\\"); break;
+			case '\n': sb.append("\\n"); break;
+			case '\r': sb.append("\\r"); break;
+			case '\t': sb.append("\\t"); break;
+			default:
+				if (c < 0x20) {
+					sb.append(String.format("\\u%04x", (int) c));
+				}
+				else {
+					sb.append(c);
+				}
+			}
+		}
+		return sb.append('"').toString();
+	}
+	
+	/**
+	 * Read the settings of a non-interactive game: a configuration file given by <code>--config file</code> 
+	 * (a {@link Properties} file), overridden by the <code>--key value</code> arguments
+	 * @param args The command-line arguments
+	 * @return The settings
+	 * @throws IllegalArgumentException If an argument is invalid
+	 * @throws IOException If the configuration file cannot be read
+	 */
+	static Properties readSettings(String[] args) throws IOException {
+		Properties settings = new Properties();
+		Properties arguments = new Properties();
+		for (int i = 0; i < args.length; ++i) {
+			if (!args[i].startsWith("--") || i + 1 == args.length)
+				throw new IllegalArgumentException("Expected --key value, got " + args[i]);
+			arguments.setProperty(args[i].substring(2), args[++i]);
+		}
+		String config = arguments.getProperty("config");
+		if (config != null) {
+			try (Reader reader = new FileReader(config)) {
+				settings.load(reader);
+			}
+		}
+		settings.putAll(arguments);
+		settings.remove("config");
+		return settings;
+	}
+	
+	/**
+	 * Play a game configured by settings (see {@link #main(String[])})
+	 * @param settings The settings
+	 * @throws IllegalArgumentException If a setting is invalid
+	 */
+	static void playConfigured(Properties settings) {
+		Set<String> known = new HashSet<>(Arrays.asList("game", "size", "player1", "player2", "output", "log"));
+		for (String key : settings.stringPropertyNames()) {
+			if (!known.contains(key))
+				throw new IllegalArgumentException("Unknown setting: " + key);
+		}
+		
+		String gameName = settings.getProperty("game", "draughts");
+		String size = settings.getProperty("size");
+		if (size != null) {
+			if (!gameName.startsWith("draughts"))
+				throw new IllegalArgumentException("No board size for " + gameName);
+			gameName = "draughts" + size;
+		}
+		NamedSupplier<Game> gameSupplier = gameSupplier(gameName);
+		String[] playerSpecs = { settings.getProperty("player1"), settings.getProperty("player2") };
+		for (int p = 0; p < 2; ++p) {
+			if (playerSpecs[p] == null)
+				throw new IllegalArgumentException("Missing player" + (p + 1));
+		}
+		// Check all the settings before creating the players, so that no player is left open
+		NamedSupplier<Player> player1Supplier = playerSupplier(playerSpecs[0]);
+		NamedSupplier<Player> player2Supplier = playerSupplier(playerSpecs[1]);
+		Output output = Output.valueOf(settings.getProperty("output", "text").toUpperCase());
+		Log.setLevel(Log.Level.valueOf(settings.getProperty("log", (output == Output.TEXT) ? "info" : "off").toUpperCase()));
+		
+		Game game = gameSupplier.get();
+		ArrayList<String> moves = new ArrayList<String>();
+		long startTime = System.nanoTime();
+		PlayerId winner;
+		Player player1 = null, player2 = null;
+		try {
+			player1 = player1Supplier.get();
+			player2 = player2Supplier.get();
+			winner = playGame(game, player1, player2, output, moves);
+		} finally {
+			close(player1, player2);
+		}
+		
+		if (output == Output.JSON) {
+			StringBuilder sb = new StringBuilder("{");
+			sb.append("\"game\": ").append(jsonString(gameSupplier.toString()));
+			sb.append(", \"player1\": ").append(jsonString(playerSpecs[0]));
+			sb.append(", \"player2\": ").append(jsonString(playerSpecs[1]));
+			sb.append(", \"moves\": [");
+			for (int i = 0; i < moves.size(); ++i) {
+				sb.append((i > 0) ? ", " : "").append(jsonString(moves.get(i)));
+			}
+			sb.append("], \"winner\": ").append((winner == null) ? "null" : jsonString(winner.toString()));
+			sb.append(", \"timeMillis\": ").append(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+			sb.append("}");
+			System.out.println(sb);
+		}
+	}
+	
+	/**
+	 * Two-player gameplay program entry point (main)
+	 *
+	 * - The program first instanciates a Game from user input, and then two Players based on user choice.
+	 * - Then the game loop starts, letting both players play until the end of the game
+	 * - The winner (or equality) is finally displayed before the program quits.
+	 * 
+	 * With arguments, the game is played without any question, for scripts and batch jobs:
+	 * <code>--game</code> (see {@link #gameSupplier(String)}), <code>--size</code> (board size of the draughts),
+	 * <code>--player1</code> and <code>--player2</code> (see {@link #playerSupplier(String)}, e.g. "mcts:time=500,threads=4"),
+	 * <code>--output</code> (text, moves or json), <code>--log</code> (off, info, debug or trace)
+	 * and <code>--config</code> (a properties file with the same keys, overridden by the other arguments).
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		if (args.length > 0) {
+			try {
+				playConfigured(readSettings(args));
+			} catch (IllegalArgumentException | IOException e) {
+				System.err.println("Error: " + e.getMessage());
+				System.exit(2);
+			}
+			return;
+		}
+		
+		System.out.println("English Draughts - M1 IL ISTIC - TP IA");
+		
+		// Create a new game
+		Game game = chooseAndCreateGame();
+		
+		// Create the two players, and release their threads whatever happens
+		Player player1 = null, player2 = null;
+		try {
+			player1 = chooseAndCreatePlayer(game.playerName(PlayerId.ONE));
+			player2 = chooseAndCreatePlayer(game.playerName(PlayerId.TWO));
+			
+			playGame(game, player1, player2, Output.TEXT, null);
+		} finally {
+			close(player1, player2);
+		}
 	}
 }
@@ -1,11 +1,22 @@
 package fr.istic.ia.tp1;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.lang.reflect.Array;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import fr.istic.ia.tp1.Game.Move;
 import fr.istic.ia.tp1.Game.PlayerId;
@@ -20,43 +31,161 @@ public class MonteCarloTreeSearch {
 	/**
 	 * A class to represent an evaluation node in the MCTS tree.
 	 * This is a member class so that each node can access the global statistics of the owning MCTS.
+	 * With the transposition table, a node can be the child of several nodes (the tree is a directed acyclic graph).
 	 * @author vdrevell
 	 *
 	 */
 	class EvalNode {
-		/** The number of simulations run through this node */
-		int n;
+		/** 
+		 * The number of simulations run through this node, plus the virtual losses of the searches in progress.
+		 * Updated atomically with {@link MonteCarloTreeSearch#N} when several threads share the tree.
+		 */
+		volatile int n;
 		
-		/** The number of winning runs */
-		double w;
+		/** 
+		 * The number of winning runs of {@link MonteCarloTreeSearch#player} (updated atomically with 
+		 * {@link MonteCarloTreeSearch#W}), plus the virtual wins of the searches in progress at the nodes 
+		 * chosen by the other player (see {@link MonteCarloTreeSearch#visit(EvalNode, Worker, boolean)}).
+		 */
+		volatile double w;
 		
-		/** The game state corresponding to this node */
-		Game game;
+		/** 
+		 * The children of the node: the games states accessible by playing a move from this node state.
+		 * Allocated with one cell per possible move on the first expansion (null before), 
+		 * and filled one child per expansion (see {@link #expand(Game, Random)}).
+		 */
+		private EvalNode[] children;
 		
-		/** The children of the node: the games states accessible by playing a move from this node state */
-		ArrayList<EvalNode> children;
+		/** The number of children added, written after the child to publish it to the other threads */
+		private volatile int nbChildren;
+		
+		/** 
+		 * Whether the subtree of the node is fully explored: the node is an ended game, 
+		 * or all its children have been added and are solved (see {@link MonteCarloTreeSearch#markSolved(List)})
+		 */
+		volatile boolean solved;
+		
+		/** 
+		 * The moves of the node, as indexes in the {@link Game#possibleMoves()} of the node state 
+		 * (played with {@link Game#playMove(int)}): the first <code>nbChildren</code> cells are the moves 
+		 * leading to the children, the others are the untried moves.
+		 */
+		private int[] moves;
 		
 		/** 
 		 * The only constructor of EvalNode.
-		 * @param game The game state corresponding to this node.
+		 * The game state of the node is not stored: it is obtained by playing the moves from the root.
 		 */
-		EvalNode(Game game) {
-			this.game = game;
-			children = new ArrayList<EvalNode>();
+		EvalNode() {
+			children = null;
+			nbChildren = 0;
 			w = 0.0;
 			n = 0;
 		}
 		
 		/**
-		 * Compute the Upper Confidence Bound for Trees (UCT) value for the node.
+		 * Get the children added so far
+		 * @return An unmodifiable list of the children (in the order in which they were added)
+		 */
+		List<EvalNode> children() {
+			int count = nbChildren;
+			if (count == 0)
+				return Collections.emptyList();
+			return Collections.unmodifiableList(Arrays.asList(children).subList(0, count));
+		}
+		
+		/**
+		 * Get the move leading to a child
+		 * @param i The rank of the child in {@link #children()}
+		 * @return The index of the move in the {@link Game#possibleMoves()} of the node state
+		 */
+		int childMove(int i) {
+			return moves[i];
+		}
+		
+		/**
+		 * Check if all the possible moves of the node have a child
+		 * @return <code>true</code> if the node has been expanded with all its children
+		 */
+		boolean isFullyExpanded() {
+			int count = nbChildren;
+			return count > 0 && count == children.length;
+		}
+		
+		/**
+		 * Check if the subtree of the node is fully explored below it
+		 * @return <code>true</code> if the node is fully expanded and all its children are solved
+		 */
+		boolean hasSolvedChildren() {
+			if (!isFullyExpanded())
+				return false;
+			for (EvalNode child : children) {
+				if (!child.solved)
+					return false;
+			}
+			return true;
+		}
+		
+		/**
+		 * Add the child of one untried move, chosen at random, and play this move.
+		 * The child is the node of the resulting state in the transposition table if there is one, 
+		 * or a new node (see {@link MonteCarloTreeSearch#childNode(long)}).
+		 * Several threads can expand the same node: each one adds its own child.
+		 * @param game The game state of the node (not ended), moved to the state of the child
+		 * @param rand The random generator choosing the move
+		 * @return The added child, or null if the node is already fully expanded (<code>game</code> is not modified)
+		 */
+		synchronized EvalNode expand(Game game, Random rand) {
+			if (children == null) {
+				int nbMoves = game.nbPossibleMoves();
+				children = new EvalNode[nbMoves];
+				moves = new int[nbMoves];
+				for (int i = 0; i < nbMoves; ++i) {
+					moves[i] = i;
+				}
+			}
+			int count = nbChildren;
+			if (count == children.length)
+				return null;
+			// Swap a random untried move to the first untried cell
+			int k = count + rand.nextInt(children.length - count);
+			int move = moves[k];
+			moves[k] = moves[count];
+			moves[count] = move;
+			
+			game.playMove(move);
+			EvalNode child = childNode(game.stateKey());
+			children[count] = child;
+			nbChildren = count + 1;
+			return child;
+		}
+		
+		/**
+		 * Drop the children of the node, which becomes a leaf again (its statistics are kept).
+		 * Must not be called during a search.
+		 * @return The number of removed children
+		 */
+		synchronized int collapse() {
+			int count = nbChildren;
+			nbChildren = 0;
+			children = null;
+			moves = null;
+			return count;
+		}
+		
+		/**
+		 * Compute the Upper Confidence Bound for Trees (UCT) value for the node, from the point of view of the player
+		 * choosing it (the player to move at its parent).
+		 * @param parentN The number of simulations of the parent
+		 * @param opponent <code>true</code> if the node is chosen by the opponent of {@link MonteCarloTreeSearch#player}, 
+		 *        whose wins are the simulations not won by the player
 		 * @return UCT value for the node
 		 */
 		// TODO
-		double uct() {
-			if (n == 0) {
-				return Integer.MAX_VALUE;
-			}
-			return this.score() + Math.sqrt(2) * Math.sqrt(Math.log(nTotal) / (double) n);
+		double uct(int parentN, boolean opponent) {
+			int n = this.n;
+			double w = this.w;
+			return MonteCarloTreeSearch.uct(opponent ? n - w : w, n, parentN);
 		}
 		
 		/**
@@ -71,11 +200,12 @@ public class MonteCarloTreeSearch {
 		/**
 		 * Update the stats (n and w) of the node with the provided rollout results
 		 * @param res
+		 * @param player The player whose wins are counted
 		 */
 		// TODO
-		void updateStats(RolloutResults res) {
+		void updateStats(RolloutResults res, PlayerId player) {
 			n = res.nbSimulations();
-			if(game.player()==PlayerId.ONE){
+			if(player==PlayerId.ONE){
 				w = res.win1;
 			}
 			else{
@@ -167,15 +297,161 @@ public class MonteCarloTreeSearch {
 		}
 	}
 	
+	/**
+	 * The data of a thread searching the tree: its working game state, random generator and reusable lists.
+	 */
+	class Worker {
+		/**
+		 * The working game state, walked down from the root state to the selected node by playing moves
+		 * and back up with {@link Game#undo()} (only used if the game can undo moves)
+		 */
+		final Game state;
+		
+		/** The random generator of the rollouts */
+		final Random rand;
+		
+		/** The nodes visited by the current iteration */
+		final ArrayList<EvalNode> visitedNodes = new ArrayList<>();
+		
+		/** Whether each visited node was chosen by the opponent of {@link MonteCarloTreeSearch#player} */
+		boolean[] opponentChoices = new boolean[64];
+		
+		/**
+		 * The constructor
+		 * @param rand The random generator of the rollouts
+		 */
+		Worker(Random rand) {
+			this.state = rootGame.clone();
+			this.rand = rand;
+		}
+	}
+	
+	/**
+	 * An entry of the transposition table: the key of a game state and its node (immutable, so that the threads
+	 * sharing the tree always read a key with its own node)
+	 */
+	static final class TTEntry {
+		final long key;
+		final EvalNode node;
+		
+		TTEntry(long key, EvalNode node) {
+			this.key = key;
+			this.node = node;
+		}
+	}
+	
+	/** 
+	 * Atomic accessors of {@link EvalNode#n}, {@link EvalNode#w}, {@link #nTotal}, {@link #nbNodes}, 
+	 * {@link #nbTranspositions} and of the entries of the transposition table
+	 */
+	static final VarHandle N, W, NTOTAL, NBNODES, NBTRANSPOSITIONS, TT_ENTRY;
+	static {
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			N = lookup.findVarHandle(EvalNode.class, "n", int.class);
+			W = lookup.findVarHandle(EvalNode.class, "w", double.class);
+			NTOTAL = lookup.findVarHandle(MonteCarloTreeSearch.class, "nTotal", int.class);
+			NBNODES = lookup.findVarHandle(MonteCarloTreeSearch.class, "nbNodes", int.class);
+			NBTRANSPOSITIONS = lookup.findVarHandle(MonteCarloTreeSearch.class, "nbTranspositions", int.class);
+			TT_ENTRY = MethodHandles.arrayElementVarHandle(TTEntry[].class);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+	
 	/**
 	 * The root of the MCTS tree
 	 */
 	EvalNode root;
 	
 	/**
-	 * The total number of performed simulations (rollouts)
+	 * The game state of the root (never modified, replaced when the root moves down the tree)
+	 */
+	Game rootGame;
+	
+	/**
+	 * The player whose wins are counted in the nodes: the player to move when the tree was created
+	 */
+	PlayerId player;
+	
+	/**
+	 * The search data of the calling thread, used by {@link #evaluateTreeOnce()}
+	 */
+	Worker worker;
+	
+	/**
+	 * The number of evaluations (MCTS iterations) run since the tree was created, or since its root moved
+	 * (see {@link #advanceTo(Game)}). Only a statistic: the UCT values use the simulations of the parent node.
+	 */
+	volatile int nTotal;
+	
+	/**
+	 * The number of nodes of the tree
+	 */
+	volatile int nbNodes;
+	
+	/**
+	 * The maximum number of nodes of the tree (see {@link #setNodeBudget(int)})
+	 */
+	int maxNodes;
+	
+	/**
+	 * The default maximum number of nodes of a tree (a node with its children array takes about 50 bytes)
 	 */
-	int nTotal;
+	static final int DEFAULT_NODE_BUDGET = 2_000_000;
+	
+	/**
+	 * The transposition table: the keys ({@link Game#stateKey()}) and nodes of states already in the tree, 
+	 * in buckets of two entries (see {@link #childNode(long)}). Empty array if disabled.
+	 */
+	private TTEntry[] ttEntries;
+	
+	/**
+	 * The number of children found in the transposition table (updated atomically)
+	 */
+	private volatile int nbTranspositions;
+	
+	/**
+	 * The default number of entries of the transposition table
+	 */
+	static final int DEFAULT_TRANSPOSITION_TABLE_SIZE = 1 << 18;
+	
+	/**
+	 * The number of simulations counted as lost in each node of the path of a search in progress,
+	 * so that concurrent searches sharing the tree select different paths.
+	 */
+	int virtualLoss;
+	
+	/**
+	 * The number of rollouts run from each selected leaf
+	 */
+	int nbRolloutsPerEval;
+	
+	/**
+	 * The pool running in parallel the rollouts of each selected leaf (leaf parallelization),
+	 * or null to run them in the searching thread
+	 */
+	ForkJoinPool rolloutPool;
+	
+	/**
+	 * Whether a search stops when its best move can no longer change (see {@link #setEarlyTermination(boolean)})
+	 */
+	boolean earlyTermination;
+	
+	/**
+	 * The detection of the convergence of a search (see {@link #setConvergenceStop(int)})
+	 */
+	ConvergenceCheck convergence;
+	
+	/**
+	 * Set by the first thread finding that the best move of the current search can no longer change
+	 */
+	private volatile boolean decided;
+	
+	/**
+	 * The number of iterations between two checks of the early termination of a search
+	 */
+	static final int EARLY_TERMINATION_PERIOD = 64;
 
 	
 	/**
@@ -183,8 +459,218 @@ public class MonteCarloTreeSearch {
 	 * @param game
 	 */
 	public MonteCarloTreeSearch(Game game) {
-		root = new EvalNode(game.clone());
+		this(game, new FastRandom());
+	}
+	
+	/**
+	 * Constructor with a given random generator (e.g. one per tree when searching several trees concurrently)
+	 * @param game
+	 * @param rand The random generator used by the rollouts
+	 */
+	public MonteCarloTreeSearch(Game game, Random rand) {
+		rootGame = game.clone();
+		player = game.player();
+		root = new EvalNode();
 		nTotal = 0;
+		nbNodes = 1;
+		maxNodes = DEFAULT_NODE_BUDGET;
+		setTranspositionTableSize(DEFAULT_TRANSPOSITION_TABLE_SIZE);
+		virtualLoss = 100;
+		nbRolloutsPerEval = 100;
+		rolloutPool = null;
+		earlyTermination = false;
+		convergence = new ConvergenceCheck(0);
+		worker = new Worker(rand);
+	}
+	
+	/**
+	 * Configure the rollouts run from each selected leaf
+	 * @param nbRolloutsPerEval The number of rollouts per leaf (also used as virtual loss)
+	 * @param rolloutPool The pool running the rollouts of a leaf in parallel, or null to run them in the searching thread
+	 */
+	public void setRollouts(int nbRolloutsPerEval, ForkJoinPool rolloutPool) {
+		this.nbRolloutsPerEval = nbRolloutsPerEval;
+		this.virtualLoss = nbRolloutsPerEval;
+		this.rolloutPool = rolloutPool;
+	}
+	
+	/**
+	 * Set whether a search stops before its limit when its best move can no longer change: when the most visited
+	 * child of the root (the move played, see {@link #getBestMove()}) leads the second one by more simulations 
+	 * than the search can still run before its limit. With a time limit, the remaining simulations are estimated 
+	 * from the rate of the simulations so far: the stop is then a heuristic, the move could still have changed.
+	 * @param earlyTermination <code>true</code> to stop the searches early (disabled by default)
+	 */
+	public void setEarlyTermination(boolean earlyTermination) {
+		this.earlyTermination = earlyTermination;
+	}
+	
+	/**
+	 * Set whether a search stops before its limit when it has converged: when the best move has been the same,
+	 * with the same value (within {@link ConvergenceCheck#TOLERANCE}), for a number of consecutive checks 
+	 * (one every {@link #EARLY_TERMINATION_PERIOD} iterations).
+	 * @param nbStableChecks The number of consecutive stable checks to stop the search, or 0 to never stop (default)
+	 */
+	public void setConvergenceStop(int nbStableChecks) {
+		this.convergence = new ConvergenceCheck(nbStableChecks);
+	}
+	
+	/**
+	 * Set the maximum number of nodes of the tree. When a search reaches it, the subtrees of the least visited 
+	 * nodes are dropped until half of the budget is used (when several threads share the tree, the tree only
+	 * stops growing, and is pruned before the next search).
+	 * @param maxNodes The maximum number of nodes
+	 */
+	public void setNodeBudget(int maxNodes) {
+		this.maxNodes = Math.max(2, maxNodes);
+	}
+	
+	/**
+	 * Set the number of entries of the transposition table, which shares the node of a game state 
+	 * between all the nodes from which it can be reached (the tree becomes a directed acyclic graph 
+	 * in which the statistics of a state gather all the simulations through it).
+	 * Must not be called during a search.
+	 * @param nbEntries The number of entries (rounded up to a power of 2), or 0 to disable the table
+	 */
+	public void setTranspositionTableSize(int nbEntries) {
+		int size = (nbEntries <= 0) ? 0 : Math.max(2, Integer.highestOneBit(nbEntries - 1) << 1);
+		ttEntries = new TTEntry[size];
+	}
+	
+	/**
+	 * Get the node of a new child: the node of the same state in the transposition table,
+	 * or else a new node, recorded in the table. The new node replaces an empty entry of the bucket 
+	 * of the key, or else the entry of the least visited node (which stays in the tree).
+	 * Lock-free: the entry is replaced with a compare-and-set, and the bucket is read again if another 
+	 * thread changed it in the meantime (possibly adding the same state).
+	 * @param key The state key of the child
+	 * @return The node of the child
+	 */
+	EvalNode childNode(long key) {
+		TTEntry[] table = ttEntries;
+		if (table.length == 0) {
+			NBNODES.getAndAdd(this, 1);
+			return new EvalNode();
+		}
+		int index = (int) (key ^ (key >>> 32)) & (table.length - 2);
+		EvalNode node = null;
+		while (true) {
+			TTEntry first = (TTEntry) TT_ENTRY.getVolatile(table, index);
+			TTEntry second = (TTEntry) TT_ENTRY.getVolatile(table, index + 1);
+			TTEntry found = (first != null && first.key == key) ? first 
+			              : (second != null && second.key == key) ? second : null;
+			if (found != null) {
+				NBTRANSPOSITIONS.getAndAdd(this, 1);
+				return found.node;
+			}
+			if (node == null) {
+				node = new EvalNode();
+			}
+			int replaced = index;
+			TTEntry old = first;
+			if (first != null && (second == null || second.node.n < first.node.n)) {
+				replaced = index + 1;
+				old = second;
+			}
+			if (TT_ENTRY.compareAndSet(table, replaced, old, new TTEntry(key, node)))
+				break;
+		}
+		NBNODES.getAndAdd(this, 1);
+		return node;
+	}
+	
+	/**
+	 * Get the number of nodes of the tree
+	 * @return The number of nodes, including the root
+	 */
+	public int nbNodes() {
+		return nbNodes;
+	}
+	
+	/**
+	 * Drop the subtrees of the least visited nodes until the tree has at most <code>targetNodes</code> nodes.
+	 * The dropped nodes are leaves again, with their statistics: they are expanded again if they are selected.
+	 * The transposition table is cleared, so that it does not hold the dropped nodes.
+	 * Must not be called during a search.
+	 * @param targetNodes The number of nodes to keep
+	 */
+	void prune(int targetNodes) {
+		// Collect the expanded nodes, children before parents
+		ArrayList<EvalNode> expanded = new ArrayList<>();
+		collectExpanded(root, expanded, newIdentitySet());
+		expanded.remove(root);
+		// Since a node has at least the simulations of its children (unless it is shared by several parents), 
+		// the stable sort keeps the children before their parent: a node is collapsed after its subtree
+		expanded.sort(Comparator.comparingInt(node -> node.n));
+		int before = nbNodes;
+		int count = before;
+		for (EvalNode node : expanded) {
+			if (count <= targetNodes)
+				break;
+			count -= node.collapse();
+		}
+		Arrays.fill(ttEntries, null);
+		// Shared nodes may have been counted as dropped while still reachable
+		nbNodes = countNodes(root);
+		Log.debug("Pruned " + (before - nbNodes) + " nodes, " + nbNodes + " left");
+	}
+	
+	/**
+	 * Create a set of nodes compared by identity
+	 * @return An empty set
+	 */
+	private static Set<EvalNode> newIdentitySet() {
+		return Collections.newSetFromMap(new IdentityHashMap<>());
+	}
+	
+	/**
+	 * Add the expanded nodes of a subgraph to a list, in postorder
+	 * @param node The root of the subgraph
+	 * @param expanded The list of expanded nodes
+	 * @param visited The nodes already visited (each shared node is collected once)
+	 */
+	private static void collectExpanded(EvalNode node, ArrayList<EvalNode> expanded, Set<EvalNode> visited) {
+		List<EvalNode> children = node.children();
+		if (children.isEmpty() || !visited.add(node))
+			return;
+		for (EvalNode child : children) {
+			collectExpanded(child, expanded, visited);
+		}
+		expanded.add(node);
+	}
+	
+	/**
+	 * Count the nodes of a subgraph
+	 * @param node The root of the subgraph
+	 * @return The number of distinct nodes reachable from <code>node</code>, including itself
+	 */
+	static int countNodes(EvalNode node) {
+		Set<EvalNode> visited = newIdentitySet();
+		ArrayList<EvalNode> stack = new ArrayList<>();
+		stack.add(node);
+		visited.add(node);
+		while (!stack.isEmpty()) {
+			for (EvalNode child : stack.remove(stack.size() - 1).children()) {
+				if (visited.add(child)) {
+					stack.add(child);
+				}
+			}
+		}
+		return visited.size();
+	}
+	
+	/**
+	 * Compute the Upper Confidence Bound for Trees (UCT) value of a node from its statistics.
+	 * @param w The number of winning runs of the node, for the player choosing it
+	 * @param n The number of simulations run through the node
+	 * @param parentN The number of simulations run through the parent of the node
+	 * @return UCT value for the node
+	 */
+	static double uct(double w, int n, int parentN) {
+		if (n == 0) {
+			return Integer.MAX_VALUE;
+		}
+		return (w/n) + Math.sqrt(2) * Math.sqrt(Math.log(parentN) / (double) n);
 	}
 	
 	/**
@@ -194,13 +680,40 @@ public class MonteCarloTreeSearch {
 	 */
 	// TODO
 	static PlayerId playRandomlyToEnd(Game game) {
-		Random rand = new Random();
+		return playRandomlyToEnd(game, FastRandom.current());
+	}
+	
+	/**
+	 * Perform a single random playing rollout from the given game state
+	 * @param game Initial game state. {@code game} will contain an ended game state when the function returns.
+	 * @param rand The random generator choosing the moves
+	 * @return The PlayerId of the winner (or NONE if equality or timeout).
+	 */
+	static PlayerId playRandomlyToEnd(Game game, Random rand) {
+		PlayerId winner;
+		while ((winner = game.winner())==null){
+			game.playRandomMove(rand);
+		}
+		return winner;
+	}
+	
+	/**
+	 * Perform a single random playing rollout from the given game state, and then undo all the played moves.
+	 * @param game Initial game state, supporting {@link Game#undo()}. {@code game} is back to its initial state when the function returns.
+	 * @param rand The random generator choosing the moves
+	 * @return The PlayerId of the winner (or NONE if equality or timeout).
+	 */
+	static PlayerId playRandomlyToEndAndBack(Game game, Random rand) {
+		int nbPlies = 0;
 
-		while (game.winner()==null){
-			List<Move> possibleMoves = game.possibleMoves();
-			game.play(possibleMoves.get(rand.nextInt(possibleMoves.size())));
+		PlayerId winner;
+		while ((winner = game.winner())==null && game.playRandomMove(rand)){
+			nbPlies++;
 		}
-		return game.winner();
+		for (; nbPlies > 0; nbPlies--) {
+			game.undo();
+		}
+		return winner;
 	}
 	
 	/**
@@ -211,133 +724,508 @@ public class MonteCarloTreeSearch {
 	 */
 	// TODO
 	static RolloutResults rollOut(final Game game, int nbRuns) {
+		return rollOut(game, nbRuns, FastRandom.current());
+	}
+	
+	/**
+	 * Perform nbRuns rollouts from a game state, and returns the winning statistics for both players.
+	 * @param game The initial game state to start with (not modified by the function)
+	 * @param nbRuns The number of playouts to perform
+	 * @param rand The random generator choosing the moves of the playouts
+	 * @return A RolloutResults object containing the number of wins for each player and the number of simulations
+	 */
+	static RolloutResults rollOut(final Game game, int nbRuns, Random rand) {
 		RolloutResults result = new RolloutResults();
 		for(int i = 0; i<nbRuns; i++){
-			Game gameCopy = game.clone();
-			result.update(playRandomlyToEnd(gameCopy));
+			if (game.canUndo()) {
+				result.update(playRandomlyToEndAndBack(game, rand));
+			}
+			else {
+				Game gameCopy = game.clone();
+				result.update(playRandomlyToEnd(gameCopy, rand));
+			}
 			result.n++;
 		}
 		return result;
 	}
 	
+	/**
+	 * Get the results of nbRuns rollouts from an ended game, without playing them
+	 * @param winner The winner of the game (or NONE if equality)
+	 * @param nbRuns The number of playouts to count
+	 * @return A RolloutResults object containing nbRuns results of the game
+	 */
+	static RolloutResults endedGameResults(PlayerId winner, int nbRuns) {
+		RolloutResults result = new RolloutResults();
+		for (int i = 0; i < nbRuns; i++) {
+			result.update(winner);
+		}
+		result.n = nbRuns;
+		return result;
+	}
+	
+	/**
+	 * Perform nbRuns rollouts from a game state, split into tasks run by a fork-join pool (one per pool thread),
+	 * and returns the winning statistics for both players.
+	 * Each task works on its own copy of the game, with its own random generator seeded from <code>rand</code>.
+	 * @param game The initial game state to start with (not modified by the function)
+	 * @param nbRuns The number of playouts to perform
+	 * @param rand The random generator seeding the ones of the tasks
+	 * @param pool The pool running the tasks
+	 * @return A RolloutResults object containing the number of wins for each player and the number of simulations
+	 */
+	static RolloutResults rollOut(final Game game, int nbRuns, Random rand, ForkJoinPool pool) {
+		int nbTasks = Math.min(pool.getParallelism(), nbRuns);
+		List<ForkJoinTask<RolloutResults>> tasks = new ArrayList<>(nbTasks);
+		for (int i = 0; i < nbTasks; ++i) {
+			Game gameCopy = game.clone();
+			Random taskRand = new FastRandom(rand.nextLong());
+			int taskRuns = nbRuns / nbTasks + (i < nbRuns % nbTasks ? 1 : 0);
+			tasks.add(pool.submit(() -> rollOut(gameCopy, taskRuns, taskRand)));
+		}
+		
+		RolloutResults result = new RolloutResults();
+		for (ForkJoinTask<RolloutResults> task : tasks) {
+			result.add(task.join());
+		}
+		return result;
+	}
+	
 	/**
 	 * Apply the MCTS algorithm during at most <code>timeLimitMillis</code> milliseconds to compute
 	 * the MCTS tree statistics.
 	 * @param timeLimitMillis Computation time limit in milliseconds
 	 */
 	public void evaluateTreeWithTimeLimit(int timeLimitMillis) {
+		evaluateTree(SearchLimit.time(timeLimitMillis));
+	}
+	
+	/**
+	 * Apply the MCTS algorithm for a fixed number of iterations instead of a time limit.
+	 * The search is then deterministic: with a seeded random generator (see {@link #MonteCarloTreeSearch(Game, Random)}),
+	 * the tree and the best move are the same at each run, whatever the speed of the machine.
+	 * @param nbIterations The number of MCTS steps ({@link #evaluateTreeOnce()})
+	 */
+	public void evaluateTreeWithIterations(int nbIterations) {
+		evaluateTree(SearchLimit.iterations(nbIterations));
+	}
+	
+	/**
+	 * Apply the MCTS algorithm until a limit is reached
+	 * @param limit When to stop the search
+	 */
+	public void evaluateTree(SearchLimit limit) {
 		// Record function entry time
 		long startTime = System.nanoTime();
 
-		// Evaluate the tree until timeout
-		while (TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) < timeLimitMillis) {
+		// Evaluate the tree until the limit
+		evaluateTree(limit, startTime);
+		//1. Selection:depuis root, on cherche sur les node jusqua leaf L,avec UCT
+		
+		// Print some statistics
+		logStats(startTime);
+	}
+	
+	/**
+	 * Apply the MCTS algorithm until a limit is reached, in the calling thread only, without printing anything.
+	 * @param limit When to stop the search
+	 * @param startTime Value of {@link System#nanoTime()} at the start of the search
+	 */
+	void evaluateTree(SearchLimit limit, long startTime) {
+		decided = false;
+		convergence.reset();
+		evaluateTree(limit.start(startTime, root.n, nbNodes), worker, true, new AtomicLong());
+	}
+	
+	/**
+	 * Apply the MCTS algorithm with several threads sharing this tree (tree parallelization) 
+	 * for a fixed number of iterations, shared between the threads (the result depends on the thread scheduling).
+	 * @param nbIterations The number of MCTS steps of all the threads together
+	 * @param nbThreads The number of concurrent searches
+	 * @param executor The executor running the searches (should have at least <code>nbThreads</code> threads)
+	 */
+	public void evaluateTreeWithIterations(int nbIterations, int nbThreads, ExecutorService executor) {
+		evaluateTree(SearchLimit.iterations(nbIterations), nbThreads, executor);
+	}
+	
+	/**
+	 * Apply the MCTS algorithm with several threads sharing this tree (tree parallelization) 
+	 * during at most <code>timeLimitMillis</code> milliseconds.
+	 * @param timeLimitMillis Computation time limit in milliseconds
+	 * @param nbThreads The number of concurrent searches
+	 * @param executor The executor running the searches (should have at least <code>nbThreads</code> threads)
+	 */
+	public void evaluateTreeWithTimeLimit(int timeLimitMillis, int nbThreads, ExecutorService executor) {
+		evaluateTree(SearchLimit.time(timeLimitMillis), nbThreads, executor);
+	}
+	
+	/**
+	 * Apply the MCTS algorithm with several threads sharing this tree (tree parallelization) 
+	 * until a limit is reached by all the threads together.
+	 * @param limit When to stop the search
+	 * @param nbThreads The number of concurrent searches
+	 * @param executor The executor running the searches (should have at least <code>nbThreads</code> threads)
+	 */
+	public void evaluateTree(SearchLimit limit, int nbThreads, ExecutorService executor) {
+		long startTime = System.nanoTime();
+		if (nbNodes >= maxNodes) {
+			prune(maxNodes / 2);
+		}
+		
+		int startRollouts = root.n;
+		int startNodes = nbNodes;
+		AtomicLong iterations = new AtomicLong();
+		decided = false;
+		convergence.reset();
+		List<Callable<Void>> tasks = new ArrayList<>(nbThreads);
+		for (int i = 0; i < nbThreads; ++i) {
+			Worker threadWorker = new Worker(new FastRandom(worker.rand.nextLong()));
+			SearchLimit.Tracker tracker = limit.start(startTime, startRollouts, startNodes);
+			tasks.add(() -> {
+				evaluateTree(tracker, threadWorker, false, iterations);
+				return null;
+			});
+		}
+		ParallelMonteCarloTreeSearch.invokeAll(executor, tasks);
+		
+		logStats(startTime);
+	}
+	
+	/**
+	 * Log the search duration and the root statistics
+	 * @param startTime Value of {@link System#nanoTime()} at the start of the search
+	 */
+	private void logStats(long startTime) {
+		if (Log.isEnabled(Log.Level.INFO)) {
+			Log.info("Stopped search after " 
+			       + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + " ms. "
+			       + "Root stats is " + root.w + "/" + root.n + String.format(" (%.2f%% loss)", 100.0*root.w/root.n));
+		}
+		Log.debug(nbNodes + " nodes, " + nbTranspositions + " transpositions");
+	}
+	
+	/**
+	 * Apply the MCTS algorithm until a limit is reached, or the calling thread is interrupted, without printing anything.
+	 * @param tracker The limit of the search, checked before each iteration
+	 * @param worker The search data of the calling thread
+	 * @param exclusive <code>true</code> if no other thread searches the tree (the tree can then be pruned)
+	 * @param iterations The number of iterations started, shared by the threads searching the tree
+	 */
+	void evaluateTree(SearchLimit.Tracker tracker, Worker worker, boolean exclusive, AtomicLong iterations) {
+		long iteration;
+		while (!decided && !Thread.currentThread().isInterrupted()
+				&& !tracker.reached(iteration = iterations.getAndIncrement(), root.n, nbNodes)) {
+			if (exclusive && nbNodes >= maxNodes) {
+				prune(maxNodes / 2);
+			}
 			// Perform one MCTS step
-			boolean canStop = evaluateTreeOnce();
+			boolean solved = evaluateTreeOnce(worker);
 			// Stop evaluating the tree if there is nothing more to explore
-			if (canStop) {
+			if (solved) {
+				Log.debug("Tree fully explored after " + (iteration + 1) + " iterations");
 				break;
 			}
+			// Stop if the best move can no longer change, or no longer changes
+			if ((earlyTermination || convergence.isEnabled())
+					&& iteration % EARLY_TERMINATION_PERIOD == EARLY_TERMINATION_PERIOD - 1
+					&& isDecided(tracker.remainingRollouts(iteration + 1, root.n, nbRolloutsPerEval))) {
+				decided = true;
+				Log.debug("Best move decided after " + (iteration + 1) + " iterations");
+			}
 		}
-		//1. Selection:depuis root, on cherche sur les node jusqua leaf L,avec UCT
+	}
+	
+	/**
+	 * Check whether the best move can no longer change (see {@link #setEarlyTermination(boolean)}),
+	 * or has converged (see {@link #setConvergenceStop(int)})
+	 * @param remainingRollouts The number of rollouts the search can still run
+	 * @return <code>true</code> if the search can stop
+	 */
+	private synchronized boolean isDecided(long remainingRollouts) {
+		// (synchronized: the moves of the root game are generated into its move buffer)
+		List<EvalNode> children = root.children();
+		int mostVisited = -1;
+		int n1 = 0, n2 = 0;
+		for (int i = 0; i < children.size(); ++i) {
+			int n = children.get(i).n;
+			if (n > n1) {
+				n2 = n1;
+				n1 = n;
+				mostVisited = i;
+			}
+			else if (n > n2) {
+				n2 = n;
+			}
+		}
+		// The most visited move is played: it cannot change if no other move can catch up with it
+		// (as far as the estimate of the remaining rollouts holds)
+		int best = bestMoveIndex(this);
+		if (earlyTermination && mostVisited >= 0 && n1 - n2 > remainingRollouts)
+			return true;
 		
-		// Print some statistics
-		System.out.println("Stopped search after " 
-		       + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + " ms. "
-		       + "Root stats is " + root.w + "/" + root.n + String.format(" (%.2f%% loss)", 100.0*root.w/root.n));
+		double value = Double.NaN;
+		for (int i = 0; i < children.size(); ++i) {
+			if (root.childMove(i) == best) {
+				value = children.get(i).w / children.get(i).n;
+			}
+		}
+		return convergence.hasConverged(best, value);
 	}
 	
 	/**
 	 * Perform one MCTS step (selection, expansion(s), simulation(s), backpropagation
-	 * @return <code>true</code> if there is no need for further exploration (to speed up end of games).
+	 * @return <code>true</code> if there is no need for further exploration (to speed up end of games):
+	 *         the tree is explored down to ended games on all its paths (the root is solved).
 	 */
 	// TODO
 	public boolean evaluateTreeOnce() {
-		ArrayList<EvalNode> visitedNodes = new ArrayList<>();
+		if (nbNodes >= maxNodes) {
+			prune(maxNodes / 2);
+		}
+		return evaluateTreeOnce(worker);
+	}
+	
+	/**
+	 * Perform one MCTS step, possibly concurrently with other threads having their own {@link Worker}.
+	 * @param worker The search data of the calling thread
+	 * @return <code>true</code> if there is no need for further exploration (the root is solved).
+	 */
+	boolean evaluateTreeOnce(Worker worker) {
 		// List of visited nodes
+		ArrayList<EvalNode> visitedNodes = worker.visitedNodes;
+		visitedNodes.clear();
 
-		// Start from the root
+		// Start from the root, with the working state (or a fresh copy if moves cannot be undone)
+		Game game = rootGame.canUndo() ? worker.state : rootGame.clone();
 		EvalNode node = root;
-		visitedNodes.add(root);
+		visit(node, worker, false);
 		// Selection (with UCT tree policy)
-		while(node.children.size()>0) {
+		while(node.isFullyExpanded()) {
 			//l'idee est a partir de root, on choisi chaque fois le bestNode,CAD la valeur UCT de ce node est
 			//supérieur que les autre node, on fait ça jusqu'a la fin de arbre
+			// (each player chooses the child that is best for them)
+			boolean opponent = game.player() != player;
+			int parentN = node.n;
 			double uct = 0;
 			double bestUct = 0;
 			EvalNode currentNode;
-			EvalNode bestNode = node.children.get(0);//on remplace par le node qui contient solution optimale
+			EvalNode[] children = node.children;
+			int best = 0;//on remplace par le node qui contient solution optimale
 
-			for (int i = 0; i < node.children.size(); i++) {
+			for (int i = 0; i < children.length; i++) {
 
-				currentNode = node.children.get(i);
-				uct = currentNode.uct();
+				currentNode = children[i];
+				uct = currentNode.uct(parentN, opponent);
 				if(uct>bestUct){
 					bestUct= uct;
-					bestNode=currentNode;
+					best=i;
 				}
 			}
-			node = bestNode;
-			visitedNodes.add(node);
+			game.playMove(node.moves[best]);
+			node = children[best];
+			visit(node, worker, opponent);
 		}
 
 		//2.Expansion: si il y a un winnner au leaf L, gameover, sinon on crée plusieurs node apartir de bestNode
 		//et on prends un node C
 
-
-		if(node.game.winner()!=null){
-			return true;//si il y a un winner, GG, sinon on lance expansion
+		boolean gameOver = game.winner()!=null;//si il y a un winner, GG, sinon on lance expansion
+		if (!gameOver) {
+			// Expand node with one new child (unless other threads already added all of them, or the tree is full)
+			boolean opponent = game.player() != player;
+			EvalNode child = (nbNodes < maxNodes) ? node.expand(game, worker.rand) : null;
+			if (child != null) {
+				node = child;
+				visit(node, worker, opponent);
+			}
 		}
-		// Expand node
-		node = expandNode(node);
-		// Simulate from new node(s)
+		// Simulate from new node
 
 		//3.Simulation: depuis C, on joue un rollOut aka jouer random
-		RolloutResults rollout = rollOut(node.game,100);
-		nTotal++;
-		// Backpropagate results
+		// (an ended game counts its known result, as many times as a leaf counts rollouts)
+		PlayerId winner = game.winner();
+		RolloutResults rollout = (winner != null) 
+				? endedGameResults(winner, nbRolloutsPerEval)
+				: (rolloutPool != null) 
+				? rollOut(game,nbRolloutsPerEval,worker.rand,rolloutPool) 
+				: rollOut(game,nbRolloutsPerEval,worker.rand);
+		NTOTAL.getAndAdd(this, 1);
+		// Backpropagate results (removing the virtual loss)
 
 		//4. Backpropagation: on utilise resultat de rollout pour mettre a jour les node entre racine
 		//R et node C
 
-		for(EvalNode evalNode : visitedNodes){
-			evalNode.n += rollout.n;
-			evalNode.w += rollout.nbWins(root.game.player());
+		double wins = rollout.nbWins(player);
+		for (int i = 0; i < visitedNodes.size(); ++i) {
+			EvalNode evalNode = visitedNodes.get(i);
+			N.getAndAdd(evalNode, rollout.n - virtualLoss);
+			double nodeWins = worker.opponentChoices[i] ? wins - virtualLoss : wins;
+			if (nodeWins != 0) {
+				W.getAndAdd(evalNode, nodeWins);
+			}
+		}
+		if (winner != null) {
+			markSolved(visitedNodes);
+		}
+
+		// Walk the working state back up to the root
+		if (game == worker.state) {
+			for (int i = 1; i < visitedNodes.size(); ++i) {
+				game.undo();
+			}
 		}
 		// Return false if tree evaluation should continue
-		return false;
+		return root.solved;
 	}
-	private EvalNode expandNode(EvalNode node){
-		Game game = node.game.clone();
-		for(Move move : node.game.possibleMoves()){
-			game = node.game.clone();
-			game.play(move);
-			node.children.add(new EvalNode(game));
+	
+	/**
+	 * Mark the last visited node, an ended game, as solved, then its ancestors on the path of the search
+	 * whose children are all solved (a node shared by several parents marks the other ones when a later
+	 * search goes through them).
+	 * @param visitedNodes The nodes visited by the search, from the root
+	 */
+	private static void markSolved(List<EvalNode> visitedNodes) {
+		int last = visitedNodes.size() - 1;
+		visitedNodes.get(last).solved = true;
+		for (int i = last - 1; i >= 0; --i) {
+			EvalNode node = visitedNodes.get(i);
+			if (!node.hasSolvedChildren())
+				return;
+			node.solved = true;
 		}
-		return node;
+	}
+	
+	/**
+	 * Add a node to the visited nodes of a search, with a virtual loss for the player choosing it: 
+	 * simulations without wins if it is {@link #player}, simulations won by {@link #player} otherwise
+	 * @param node The selected node
+	 * @param worker The search data of the calling thread
+	 * @param opponent <code>true</code> if the node is chosen by the opponent of {@link #player}
+	 */
+	private void visit(EvalNode node, Worker worker, boolean opponent) {
+		N.getAndAdd(node, virtualLoss);
+		if (opponent) {
+			W.getAndAdd(node, (double) virtualLoss);
+		}
+		int depth = worker.visitedNodes.size();
+		if (depth == worker.opponentChoices.length) {
+			worker.opponentChoices = Arrays.copyOf(worker.opponentChoices, 2 * depth);
+		}
+		worker.opponentChoices[depth] = opponent;
+		worker.visitedNodes.add(node);
 	}
 
+	/**
+	 * Move the root of the tree down to the child whose game state equals the given one
+	 * (e.g. after the move chosen by the search, then after the move of the opponent),
+	 * so that the statistics of its subtree are reused by the next search. The rest of the tree is dropped,
+	 * and the transposition table is cleared so that it does not hold the dropped nodes (as in {@link #prune(int)}).
+	 * Must not be called during a search.
+	 * @param game The game state of the new root
+	 * @return <code>true</code> if the root is now at <code>game</code>, 
+	 *         <code>false</code> if no child of the root has this state (the tree is unchanged)
+	 */
+	public boolean advanceTo(Game game) {
+		if (rootGame.equals(game))
+			return true;
+		int i = childIndexOf(game);
+		if (i < 0)
+			return false;
+		root = root.children().get(i);
+		rootGame = game.clone();
+		Arrays.fill(ttEntries, null);
+		worker = new Worker(worker.rand);
+		nTotal = 0;
+		nbNodes = countNodes(root);
+		Log.debug("Reusing " + root.n + " simulations of the previous search");
+		return true;
+	}
+	
+	/**
+	 * Check whether {@link #advanceTo(Game)} can move the root to a game state, without changing the tree
+	 * @param game The game state of the new root
+	 * @return <code>true</code> if the root or one of its children has this state
+	 */
+	boolean canAdvanceTo(Game game) {
+		return rootGame.equals(game) || childIndexOf(game) >= 0;
+	}
+	
+	/**
+	 * Find the child of the root whose game state equals the given one
+	 * @param game The game state
+	 * @return The rank of the child in {@link EvalNode#children()}, or -1 if none
+	 */
+	private int childIndexOf(Game game) {
+		List<EvalNode> children = root.children();
+		for (int i = 0; i < children.size(); ++i) {
+			Game state = rootGame.canUndo() ? worker.state : rootGame.clone();
+			state.playMove(root.childMove(i));
+			boolean found = state.equals(game);
+			if (state == worker.state) {
+				state.undo();
+			}
+			if (found)
+				return i;
+		}
+		return -1;
+	}
 
 	/**
 	 * @return The best move to play from the current MCTS tree state.
 	 */
 	public Move getBestMove() {
+		Move move = getBestMove(this);
+		Log.debug("Best move: " + move);
+		return move;
+	}
+	
+	/**
+	 * Choose the best move from the merged root statistics of several trees searched from the same game state:
+	 * the most visited move (the "robust child", whose choice cannot be changed by the exploration term of the
+	 * UCT values), ties being broken by the mean value for the player to move.
+	 * The root children of the trees are merged by move index (see {@link EvalNode#childMove(int)}).
+	 * Moves without any simulation are not chosen (unless no move has been simulated).
+	 * @param trees The trees (at least one)
+	 * @return The best move to play from the game state of the trees.
+	 */
+	static Move getBestMove(MonteCarloTreeSearch... trees) {
 		// 
 		// TODO Implement MCTS getBestMove
 		//
-		double uct = 0;
-		double bestUct = 0;
-		Move move = root.game.possibleMoves().get(0);
+		return trees[0].rootGame.possibleMoves().get(bestMoveIndex(trees));
+	}
+	
+	/**
+	 * Choose the best move from the merged root statistics of several trees (see {@link #getBestMove(MonteCarloTreeSearch...)})
+	 * @param trees The trees (at least one)
+	 * @return The index of the best move in {@link Game#possibleMoves()}
+	 */
+	static int bestMoveIndex(MonteCarloTreeSearch... trees) {
+		int nbMoves = trees[0].rootGame.nbPossibleMoves();
+		double[] w = new double[nbMoves];
+		int[] n = new int[nbMoves];
+		for (MonteCarloTreeSearch tree : trees) {
+			List<EvalNode> children = tree.root.children();
+			for (int i = 0; i < children.size(); ++i) {
+				w[tree.root.childMove(i)] += children.get(i).w;
+				n[tree.root.childMove(i)] += children.get(i).n;
+			}
+		}
 		
-		for (int i = 0; i < root.children.size(); i++) {
-
-			uct = root.children.get(i).uct();
-			if(uct>bestUct){
-				bestUct= uct;
-				move=root.game.possibleMoves().get(i);
+		if (trees[0].rootGame.player() != trees[0].player) {
+			// Wins of the player to move (e.g. when pondering on the move of the opponent)
+			for (int i = 0; i < nbMoves; i++) {
+				w[i] = n[i] - w[i];
 			}
 		}
-		System.out.println(move);
-		return move;
+		
+		int best = 0;
+		for (int i = 1; i < nbMoves; i++) {
+			if (n[i] > n[best] || (n[i] == n[best] && n[i] > 0 && w[i] / n[i] > w[best] / n[best])) {
+				best = i;
+			}
+		}
+		return best;
 	}
 	
 	
@@ -347,11 +1235,12 @@ public class MonteCarloTreeSearch {
 	 */
 	public String stats() {
 		String str = "MCTS with " + nTotal + " evals\n";
-		Iterator<Move> itMove = root.game.possibleMoves().iterator();
-		for (EvalNode node : root.children) {
-			Move move = itMove.next();
+		List<Move> moves = rootGame.possibleMoves();
+		List<EvalNode> children = root.children();
+		for (int i = 0; i < children.size(); ++i) {
+			EvalNode node = children.get(i);
 			double score = node.score();
-			str += move + " : " + score + " (" + node.w + "/" + node.n + ")\n";
+			str += moves.get(root.childMove(i)) + " : " + score + " (" + node.w + "/" + node.n + ")\n";
 		}
 		return str;
 	}
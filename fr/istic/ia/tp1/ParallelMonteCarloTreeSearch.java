@@ -0,0 +1,272 @@
+package fr.istic.ia.tp1;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import fr.istic.ia.tp1.Game.Move;
+
+/**
+ * Root-parallel Monte-Carlo Tree Search: several independent {@link MonteCarloTreeSearch} trees
+ * are built from the same game state, each one by its own worker thread with its own random generator.
+ * Their root statistics are merged to choose the move to play.
+ */
+public class ParallelMonteCarloTreeSearch {
+
+	/** The independent trees */
+	final MonteCarloTreeSearch[] trees;
+
+	/** The executor running the tree searches (should have at least as many threads as trees) */
+	final ExecutorService executor;
+
+	/**
+	 * The constructor
+	 * @param game The game state to search from
+	 * @param nbTrees The number of independent trees
+	 * @param executor The executor running the searches
+	 */
+	public ParallelMonteCarloTreeSearch(Game game, int nbTrees, ExecutorService executor) {
+		this(game, nbTrees, executor, new FastRandom());
+	}
+
+	/**
+	 * Constructor with a random generator seeding the ones of the trees (for reproducible searches)
+	 * @param game The game state to search from
+	 * @param nbTrees The number of independent trees
+	 * @param executor The executor running the searches
+	 * @param seeds The random generator giving the seeds of the generators of the trees
+	 */
+	public ParallelMonteCarloTreeSearch(Game game, int nbTrees, ExecutorService executor, Random seeds) {
+		this.trees = new MonteCarloTreeSearch[nbTrees];
+		for (int i = 0; i < nbTrees; ++i) {
+			trees[i] = new MonteCarloTreeSearch(game, new FastRandom(seeds.nextLong()));
+		}
+		this.executor = executor;
+	}
+
+	/**
+	 * Set the number of rollouts run from each selected leaf of every tree
+	 * @param nbRolloutsPerEval The number of rollouts per leaf
+	 */
+	public void setRolloutsPerEval(int nbRolloutsPerEval) {
+		for (MonteCarloTreeSearch tree : trees) {
+			tree.setRollouts(nbRolloutsPerEval, null);
+		}
+	}
+
+	/**
+	 * Set whether each tree stops its search when its best move can no longer change
+	 * (see {@link MonteCarloTreeSearch#setEarlyTermination(boolean)})
+	 * @param earlyTermination <code>true</code> to stop the searches early
+	 */
+	public void setEarlyTermination(boolean earlyTermination) {
+		for (MonteCarloTreeSearch tree : trees) {
+			tree.setEarlyTermination(earlyTermination);
+		}
+	}
+
+	/**
+	 * Set whether each tree stops its search when it has converged
+	 * (see {@link MonteCarloTreeSearch#setConvergenceStop(int)})
+	 * @param nbStableChecks The number of consecutive stable checks to stop the search, or 0 to never stop
+	 */
+	public void setConvergenceStop(int nbStableChecks) {
+		for (MonteCarloTreeSearch tree : trees) {
+			tree.setConvergenceStop(nbStableChecks);
+		}
+	}
+
+	/**
+	 * Set the maximum number of nodes of all the trees together (see {@link MonteCarloTreeSearch#setNodeBudget(int)})
+	 * @param maxNodes The maximum number of nodes, shared equally between the trees
+	 */
+	public void setNodeBudget(int maxNodes) {
+		for (MonteCarloTreeSearch tree : trees) {
+			tree.setNodeBudget(maxNodes / trees.length);
+		}
+	}
+
+	/**
+	 * Evaluate all the trees concurrently during at most <code>timeLimitMillis</code> milliseconds.
+	 * @param timeLimitMillis Computation time limit in milliseconds
+	 */
+	public void evaluateTreeWithTimeLimit(int timeLimitMillis) {
+		evaluateTree(SearchLimit.time(timeLimitMillis));
+	}
+
+	/**
+	 * Evaluate all the trees concurrently, each one for a fixed number of iterations.
+	 * The trees being independent, the result is the same at each run if the trees are seeded.
+	 * @param nbIterations The number of MCTS steps of each tree
+	 */
+	public void evaluateTreeWithIterations(int nbIterations) {
+		evaluateTree(SearchLimit.iterations((long) nbIterations * trees.length));
+	}
+
+	/**
+	 * Evaluate all the trees concurrently until a limit is reached. The iterations, rollouts and nodes of the limit
+	 * are shared equally between the trees (see {@link SearchLimit#split(int)}), so that the work of each tree,
+	 * and the result of seeded trees, does not depend on the thread scheduling.
+	 * @param limit When to stop the search of all the trees together
+	 */
+	public void evaluateTree(SearchLimit limit) {
+		long startTime = System.nanoTime();
+		SearchLimit treeLimit = limit.split(trees.length);
+
+		List<Callable<Void>> tasks = new ArrayList<>(trees.length);
+		for (MonteCarloTreeSearch tree : trees) {
+			tasks.add(() -> {
+				tree.evaluateTree(treeLimit, startTime);
+				return null;
+			});
+		}
+		invokeAll(executor, tasks);
+		logStats(startTime);
+	}
+
+	/**
+	 * Log the search duration and the merged root statistics
+	 * @param startTime Value of {@link System#nanoTime()} at the start of the search
+	 */
+	private void logStats(long startTime) {
+		if (Log.isEnabled(Log.Level.INFO)) {
+			double w = 0;
+			int n = 0;
+			for (MonteCarloTreeSearch tree : trees) {
+				w += tree.root.w;
+				n += tree.root.n;
+			}
+			Log.info("Stopped search of " + trees.length + " trees after "
+			       + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + " ms. "
+			       + "Root stats is " + w + "/" + n + String.format(" (%.2f%% loss)", 100.0*w/n));
+		}
+	}
+
+	/**
+	 * Run tasks on an executor and wait for all of them, rethrowing their failures.
+	 * If the calling thread is interrupted, or a task fails, the other tasks are interrupted (the searches check it
+	 * before each iteration) and still waited for, so that no worker goes on searching the trees once this method 
+	 * has returned.
+	 * @param executor The executor
+	 * @param tasks The tasks to run
+	 */
+	static void invokeAll(ExecutorService executor, List<Callable<Void>> tasks) {
+		int nbTasks = tasks.size();
+		// A task is claimed either by the worker running it, or by an interrupted caller so that it never runs
+		AtomicBoolean[] claimed = new AtomicBoolean[nbTasks];
+		CountDownLatch finished = new CountDownLatch(nbTasks);
+		List<Future<Void>> futures = new ArrayList<>(nbTasks);
+		// The tasks are waited for in their order of completion, so that a failure is seen as soon as it happens
+		CompletionService<Void> completion = new ExecutorCompletionService<>(executor);
+		for (int i = 0; i < nbTasks; ++i) {
+			AtomicBoolean taskClaimed = claimed[i] = new AtomicBoolean();
+			Callable<Void> task = tasks.get(i);
+			futures.add(completion.submit(() -> {
+				if (!taskClaimed.compareAndSet(false, true))
+					return null;
+				try {
+					return task.call();
+				} finally {
+					finished.countDown();
+				}
+			}));
+		}
+		
+		try {
+			for (int i = 0; i < nbTasks; ++i) {
+				completion.take().get();
+			}
+		} catch (InterruptedException e) {
+			cancelAll(claimed, futures, finished);
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			cancelAll(claimed, futures, finished);
+			throw new IllegalStateException("MCTS worker failed", e.getCause());
+		}
+	}
+	
+	/**
+	 * Stop the tasks of {@link #invokeAll(ExecutorService, List)}: claim the ones not started yet so that they never run,
+	 * interrupt the running ones, and wait for them to finish
+	 * @param claimed The claims of the tasks
+	 * @param futures The futures of the tasks
+	 * @param finished The latch counting the finished (or never run) tasks
+	 */
+	private static void cancelAll(AtomicBoolean[] claimed, List<Future<Void>> futures, CountDownLatch finished) {
+		for (int i = 0; i < claimed.length; ++i) {
+			if (claimed[i].compareAndSet(false, true)) {
+				finished.countDown();
+			}
+			futures.get(i).cancel(true);
+		}
+		awaitUninterruptibly(finished);
+	}
+	
+	/**
+	 * Wait for a latch, whatever the interruptions of the calling thread (its interrupt status is set again)
+	 * @param latch The latch
+	 */
+	private static void awaitUninterruptibly(CountDownLatch latch) {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				latch.await();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Move the root of every tree down to the child whose game state equals the given one
+	 * (see {@link MonteCarloTreeSearch#advanceTo(Game)}).
+	 * All the trees move, or none: the trees are checked first, so that they stay rooted at the same game state.
+	 * @param game The game state of the new roots
+	 * @return <code>true</code> if all the roots are now at <code>game</code>, 
+	 *         <code>false</code> if a tree has no such child (no tree is changed)
+	 */
+	public boolean advanceTo(Game game) {
+		for (MonteCarloTreeSearch tree : trees) {
+			if (!tree.canAdvanceTo(game))
+				return false;
+		}
+		for (MonteCarloTreeSearch tree : trees) {
+			tree.advanceTo(game);
+		}
+		return true;
+	}
+
+	/**
+	 * @return The best move to play according to the merged root statistics of all the trees.
+	 */
+	public Move getBestMove() {
+		Move move = MonteCarloTreeSearch.getBestMove(trees);
+		Log.debug("Best move: " + move);
+		return move;
+	}
+
+	/**
+	 * Get a few stats about each tree
+	 * @return A string containing the stats of all the trees
+	 */
+	public String stats() {
+		StringBuilder sb = new StringBuilder();
+		for (MonteCarloTreeSearch tree : trees) {
+			sb.append(tree.stats());
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,175 @@
+package fr.istic.ia.tp1;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import fr.istic.ia.tp1.Game.Move;
+
+/**
+ * Perft ("performance test"): count the positions reached after exactly <code>depth</code> moves from a game state,
+ * by walking the whole move tree (a position without possible move is not counted).
+ *
+ * The counts of a correct move generator are known exactly, so that perft checks the move generation
+ * ({@link Game#possibleMoves()}, {@link Game#play(Move)}, {@link Game#undo()}) after any optimization,
+ * and measures its raw speed independently of the searches.
+ * The "divide" variant gives the count below each possible move, to find the move where two generators disagree.
+ *
+ * Usage: <code>java fr.istic.ia.tp1.Perft [boardSize [depth [nbThreads [move...]]]]</code>,
+ * the optional moves (e.g. "11-15") being played from the initial state before counting.
+ */
+public class Perft {
+
+	private Perft() {
+	}
+
+	/**
+	 * Count the positions at a given depth with the {@link Game} methods only
+	 * (the {@link Move} objects of {@link Game#possibleMoves()}, played and undone or played on a copy)
+	 * @param game The game state (restored on return)
+	 * @param depth The number of moves
+	 * @return The number of positions
+	 */
+	public static long perft(Game game, int depth) {
+		if (depth == 0)
+			return 1;
+		List<Move> moves = game.possibleMoves();
+		if (depth == 1)
+			return moves.size();
+		long nodes = 0;
+		for (Move move : moves) {
+			if (game.canUndo()) {
+				game.play(move);
+				nodes += perft(game, depth - 1);
+				game.undo();
+			}
+			else {
+				Game next = game.clone();
+				next.play(move);
+				nodes += perft(next, depth - 1);
+			}
+		}
+		return nodes;
+	}
+
+	/**
+	 * Count the positions at a given depth with the allocation-free move generation of the draughts
+	 * (the path used by the random playouts)
+	 * @param game The game state (restored on return)
+	 * @param depth The number of moves
+	 * @param buffers The move buffers, one per remaining depth (at least <code>depth</code>)
+	 * @return The number of positions
+	 */
+	static long perft(EnglishDraughts game, int depth, EnglishDraughts.MoveBuffer[] buffers) {
+		if (depth == 0)
+			return 1;
+		EnglishDraughts.MoveBuffer moves = buffers[depth - 1];
+		int nbMoves = game.generateMoves(moves);
+		if (depth == 1)
+			return nbMoves;
+		long nodes = 0;
+		for (int i = 0; i < nbMoves; ++i) {
+			game.play(moves, i);
+			nodes += perft(game, depth - 1, buffers);
+			game.undo();
+		}
+		return nodes;
+	}
+
+	/**
+	 * Count the positions at a given depth below each possible move, the moves being searched concurrently
+	 * (with the allocation-free move generation for the draughts)
+	 * @param game The game state (not modified)
+	 * @param depth The number of moves (at least 1)
+	 * @param nbThreads The number of threads
+	 * @return The number of positions below each move, in the order of {@link Game#possibleMoves()}
+	 * @throws IllegalArgumentException If the depth is less than 1 (there is no move below which to count)
+	 */
+	public static Map<Move, Long> divide(Game game, int depth, int nbThreads) {
+		if (depth < 1)
+			throw new IllegalArgumentException("Invalid divide depth " + depth + " (at least 1)");
+		List<Move> moves = game.possibleMoves();
+		List<Callable<Long>> tasks = new ArrayList<>(moves.size());
+		for (Move move : moves) {
+			Game next = game.clone();
+			next.play(move);
+			tasks.add(() -> count(next, depth - 1));
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, nbThreads));
+		Map<Move, Long> counts = new LinkedHashMap<>();
+		try {
+			List<Future<Long>> futures = executor.invokeAll(tasks);
+			for (int i = 0; i < moves.size(); ++i) {
+				counts.put(moves.get(i), futures.get(i).get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Perft task failed", e.getCause());
+		} finally {
+			executor.shutdown();
+		}
+		return counts;
+	}
+
+	/**
+	 * Count the positions at a given depth with the fastest move generation of the game
+	 * @param game The game state (restored on return)
+	 * @param depth The number of moves
+	 * @return The number of positions
+	 */
+	static long count(Game game, int depth) {
+		if (game instanceof EnglishDraughts) {
+			EnglishDraughts.MoveBuffer[] buffers = new EnglishDraughts.MoveBuffer[Math.max(1, depth)];
+			for (int i = 0; i < buffers.length; ++i) {
+				buffers[i] = new EnglishDraughts.MoveBuffer();
+			}
+			return perft((EnglishDraughts) game, depth, buffers);
+		}
+		return perft(game, depth);
+	}
+
+	public static void main(String[] args) {
+		int boardSize = (args.length > 0) ? Integer.parseInt(args[0]) : 8;
+		int maxDepth = (args.length > 1) ? Integer.parseInt(args[1]) : 8;
+		int nbThreads = (args.length > 2) ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+		Game game = new EnglishDraughts(boardSize);
+		for (int i = 3; i < args.length; ++i) {
+			Move played = null;
+			for (Move move : game.possibleMoves()) {
+				if (move.toString().equals(args[i])) {
+					played = move;
+				}
+			}
+			if (played == null) {
+				System.err.println("Illegal move: " + args[i] + " (possible moves: " + game.possibleMoves() + ")");
+				return;
+			}
+			game.play(played);
+		}
+		System.out.println(game.view());
+
+		for (int depth = 1; depth <= maxDepth; ++depth) {
+			long startTime = System.nanoTime();
+			Map<Move, Long> counts = divide(game, depth, nbThreads);
+			long duration = System.nanoTime() - startTime;
+			long total = counts.values().stream().mapToLong(Long::longValue).sum();
+			if (depth == maxDepth) {
+				for (Map.Entry<Move, Long> entry : counts.entrySet()) {
+					System.out.println(entry.getKey() + ": " + entry.getValue());
+				}
+			}
+			System.out.println(String.format("perft(%d) = %d in %d ms (%.0f nodes/s)", depth, total,
+					TimeUnit.NANOSECONDS.toMillis(duration), total * 1e9 / Math.max(1, duration)));
+		}
+	}
+}
@@ -1,14 +1,82 @@
 package fr.istic.ia.tp1;
 
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
 /**
  * An implementation of {@link Player} that uses the MCTS algorithm
  * @author vdrevell
  *
  */
-public class PlayerMCTS implements Player {
+public class PlayerMCTS implements Player, AutoCloseable {
+	
+	/**
+	 * The ways of using several threads for the search
+	 */
+	public static enum Parallelism {
+		/** Independent trees, one per thread, merged at the root ({@link ParallelMonteCarloTreeSearch}) */
+		ROOT,
+		/** A single tree shared by all the threads */
+		TREE,
+		/** A single tree searched by one thread, with the rollouts of each leaf run by all the threads */
+		LEAF
+	}
 	
 	private int timeAllowedMillis;
 	
+	/** The number of threads searching */
+	private int nbThreads;
+	
+	/** How the threads share the search */
+	private Parallelism parallelism;
+	
+	/** The number of rollouts run from each selected leaf */
+	private int nbRolloutsPerEval = 100;
+	
+	/** The worker threads, created on first use when <code>nbThreads</code> is more than 1 */
+	private ExecutorService executor;
+	
+	/** The rollout threads of the {@link Parallelism#LEAF} mode, created on first use */
+	private ForkJoinPool rolloutPool;
+	
+	/** When to stop the search of a move, or null for <code>timeAllowedMillis</code> (or the time of the game clock) */
+	private SearchLimit limit;
+	
+	/** The clock of the game, giving the thinking time of each move, or null */
+	private TimeManager timeManager;
+	
+	/** Whether a search stops when its best move can no longer change */
+	private boolean earlyTermination = false;
+	
+	/** The number of consecutive stable checks after which a search stops, or 0 */
+	private int nbStableChecks = 0;
+	
+	/** The random generator giving the seeds of the trees, or null for unseeded trees */
+	private Random seeds;
+	
+	/** The maximum number of nodes of the search tree(s) */
+	private int maxNodes = MonteCarloTreeSearch.DEFAULT_NODE_BUDGET;
+	
+	/** Whether the single-thread search uses a {@link CompactMonteCarloTreeSearch} */
+	private boolean compactTree = false;
+	
+	/** Whether the tree of a search is kept for the next move */
+	private boolean reuseTree = true;
+	
+	/** The tree kept from the previous move (rooted after the move played), or null */
+	private MonteCarloTreeSearch tree;
+	
+	/** The trees kept from the previous move in {@link Parallelism#ROOT} mode, or null */
+	private ParallelMonteCarloTreeSearch trees;
+	
+	/** Whether the kept tree is searched while the opponent is thinking */
+	private boolean pondering = false;
+	
+	/** The thread searching the kept tree(s) between two moves, or null */
+	private Thread ponderer;
+	
 	/**
 	 * Default constructor, sets a computation timeout of 1000 ms.
 	 */
@@ -21,13 +89,354 @@ public class PlayerMCTS implements Player {
 	 * @param timeAllowedMillis: allowed computation time, in milliseconds.
 	 */
 	public PlayerMCTS(int timeAllowedMillis) {
+		this(timeAllowedMillis, 1);
+	}
+	
+	/**
+	 * Constructor with ability to set the maximum allowed computation time and the number of threads
+	 * @param timeAllowedMillis: allowed computation time, in milliseconds.
+	 * @param nbThreads: number of independent trees searched concurrently, one per thread.
+	 */
+	public PlayerMCTS(int timeAllowedMillis, int nbThreads) {
+		this(timeAllowedMillis, nbThreads, Parallelism.ROOT);
+	}
+	
+	/**
+	 * Constructor with ability to set the maximum allowed computation time and how to use several threads
+	 * @param timeAllowedMillis: allowed computation time, in milliseconds.
+	 * @param nbThreads: number of threads searching concurrently.
+	 * @param parallelism: how the threads share the search.
+	 */
+	public PlayerMCTS(int timeAllowedMillis, int nbThreads, Parallelism parallelism) {
 		this.timeAllowedMillis = timeAllowedMillis;
+		this.limit = null;
+		this.nbThreads = Math.max(1, nbThreads);
+		this.parallelism = parallelism;
+	}
+	
+	/**
+	 * Set the number of rollouts run from each selected leaf of the tree (100 by default)
+	 * @param nbRolloutsPerEval The number of rollouts per leaf
+	 */
+	public void setRolloutsPerEval(int nbRolloutsPerEval) {
+		this.nbRolloutsPerEval = nbRolloutsPerEval;
+	}
+	
+	/**
+	 * Search a fixed number of iterations per move instead of the allowed computation time.
+	 * With {@link #setSeed(long)}, the moves are then the same at each run (except with {@link Parallelism#TREE}, 
+	 * where the threads share the tree in an unpredictable order, and with pondering).
+	 * @param nbIterations The number of iterations per move (of all the trees together), or 0 to use the time limit
+	 */
+	public void setIterations(int nbIterations) {
+		setSearchLimit((nbIterations > 0) ? SearchLimit.iterations(nbIterations) : null);
+	}
+	
+	/**
+	 * Set when to stop the search of each move, e.g. <code>SearchLimit.time(500).or(SearchLimit.rollouts(100000))</code>.
+	 * The iterations, rollouts and nodes are counted for all the threads together.
+	 * With a game clock ({@link #setGameTime(long, long)}), the search also stops at the time allocated to the move.
+	 * @param limit The limit of a search, or null for the allowed computation time given to the constructor
+	 */
+	public void setSearchLimit(SearchLimit limit) {
+		this.limit = limit;
+	}
+	
+	/**
+	 * Play the games with a total thinking time instead of a time per move: the time of each move is allocated
+	 * by a {@link TimeManager}, the time saved on forced moves and decided searches being spent on the next moves.
+	 * The clock is reset by {@link #newGame()}.
+	 * @param gameTimeMillis The total thinking time of the player for the game, in milliseconds
+	 * @param incrementMillis The time added after each move, in milliseconds
+	 */
+	public void setGameTime(long gameTimeMillis, long incrementMillis) {
+		this.timeManager = new TimeManager(gameTimeMillis, incrementMillis);
+	}
+	
+	/**
+	 * Prepare the player for a new game: the game clock, if any, gets back the whole thinking time
+	 */
+	public void newGame() {
+		if (timeManager != null) {
+			timeManager.reset();
+		}
+	}
+	
+	/**
+	 * Set whether a search stops before its limit when its best move can no longer change (disabled by default,
+	 * see {@link MonteCarloTreeSearch#setEarlyTermination(boolean)}: with a time limit, the remaining simulations
+	 * are estimated, so the move could still have changed)
+	 * @param earlyTermination <code>true</code> to stop the searches early
+	 */
+	public void setEarlyTermination(boolean earlyTermination) {
+		this.earlyTermination = earlyTermination;
+	}
+	
+	/**
+	 * Set whether a search stops before its limit when its best move and its value no longer change
+	 * (disabled by default, see {@link MonteCarloTreeSearch#setConvergenceStop(int)})
+	 * @param nbStableChecks The number of consecutive stable checks to stop the search, or 0 to never stop
+	 */
+	public void setConvergenceStop(int nbStableChecks) {
+		this.nbStableChecks = nbStableChecks;
+	}
+	
+	/**
+	 * Get the limit of the search of the next move
+	 * @return The search limit, including the time allocated by the game clock if any
+	 */
+	private SearchLimit moveLimit() {
+		SearchLimit timeLimit = (timeManager != null) ? SearchLimit.time(timeManager.moveTimeMillis())
+				: (limit == null) ? SearchLimit.time(timeAllowedMillis) : null;
+		if (limit == null)
+			return timeLimit;
+		return (timeLimit == null) ? limit : limit.or(timeLimit);
+	}
+	
+	/**
+	 * Seed the random generators of the searches, for reproducible runs (see {@link #setIterations(int)})
+	 * @param seed The seed
+	 */
+	public void setSeed(long seed) {
+		this.seeds = new FastRandom(seed);
+	}
+	
+	/**
+	 * Get the random generator of a new tree
+	 * @return A generator seeded from <code>seeds</code>, or an unseeded one
+	 */
+	private Random newRandom() {
+		return (seeds != null) ? new FastRandom(seeds.nextLong()) : new FastRandom();
+	}
+	
+	/**
+	 * Set the maximum number of nodes of the search tree(s), to bound the memory used by long searches
+	 * (see {@link MonteCarloTreeSearch#setNodeBudget(int)})
+	 * @param maxNodes The maximum number of nodes
+	 */
+	public void setNodeBudget(int maxNodes) {
+		this.maxNodes = maxNodes;
+	}
+	
+	/**
+	 * Set whether the single-thread search stores its tree in primitive arrays ({@link CompactMonteCarloTreeSearch}).
+	 * The compact tree is not kept between moves.
+	 * @param compactTree <code>true</code> to use the compact tree
+	 */
+	public void setCompactTree(boolean compactTree) {
+		this.compactTree = compactTree;
+	}
+	
+	/**
+	 * Set whether the tree of a search is kept for the next move (enabled by default).
+	 * The root of the kept tree is moved down through the move played and the move of the opponent,
+	 * so that the simulations already run below the new position are not lost.
+	 * @param reuseTree <code>true</code> to keep the tree between moves
+	 */
+	public void setTreeReuse(boolean reuseTree) {
+		this.reuseTree = reuseTree;
+		if (!reuseTree) {
+			stopPondering();
+			tree = null;
+			trees = null;
+		}
+	}
+	
+	/**
+	 * Set whether the kept tree is searched in a background thread while the opponent is thinking
+	 * (disabled by default). The search of the opponent's time is reused when the tree moves down to the
+	 * position actually played. Requires the tree reuse ({@link #setTreeReuse(boolean)}).
+	 * @param pondering <code>true</code> to search on the opponent's time
+	 */
+	public void setPondering(boolean pondering) {
+		this.pondering = pondering;
+		if (!pondering) {
+			stopPondering();
+		}
+	}
+	
+	/**
+	 * Start searching the kept trees in a background thread, until {@link #stopPondering()}
+	 * @param ponderedTrees The trees to search in turn
+	 */
+	private void startPondering(MonteCarloTreeSearch... ponderedTrees) {
+		ponderer = new Thread(() -> {
+			long evals = 0;
+			boolean canStop = false;
+			while (!canStop && !Thread.currentThread().isInterrupted()) {
+				for (MonteCarloTreeSearch ponderedTree : ponderedTrees) {
+					canStop |= ponderedTree.evaluateTreeOnce();
+				}
+				++evals;
+			}
+			Log.debug("Pondered " + evals + " evals");
+		}, "mcts-ponder");
+		ponderer.setDaemon(true);
+		ponderer.start();
+	}
+	
+	/**
+	 * Stop the background search started after the previous move, if any, and wait for its end.
+	 */
+	public void stopPondering() {
+		if (ponderer == null)
+			return;
+		ponderer.interrupt();
+		try {
+			ponderer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		ponderer = null;
+	}
+	
+	/**
+	 * Release the threads of the player: stop the background search, if any, drop the kept trees and shut down
+	 * the worker and rollout pools (created again if the player plays another move).
+	 */
+	@Override
+	public void close() {
+		stopPondering();
+		tree = null;
+		trees = null;
+		if (executor != null) {
+			executor.shutdown();
+			executor = null;
+		}
+		if (rolloutPool != null) {
+			rolloutPool.shutdown();
+			rolloutPool = null;
+		}
+	}
+	
+	/**
+	 * Get the game state after a move
+	 * @param game The game state before the move (not modified)
+	 * @param move The move
+	 * @return A new game state
+	 */
+	private static Game stateAfter(Game game, Game.Move move) {
+		Game next = game.clone();
+		next.play(move);
+		return next;
+	}
+	
+	/**
+	 * Get the worker threads (daemon threads, so that they do not prevent the program from exiting)
+	 * @return The executor
+	 */
+	private ExecutorService executor() {
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(nbThreads, runnable -> {
+				Thread thread = new Thread(runnable, "mcts-worker");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return executor;
+	}
+	
+	/**
+	 * Get the rollout threads (fork-join pool threads are daemon threads)
+	 * @return The rollout pool
+	 */
+	private ForkJoinPool rolloutPool() {
+		if (rolloutPool == null) {
+			rolloutPool = new ForkJoinPool(nbThreads);
+		}
+		return rolloutPool;
 	}
 	
 	@Override
 	public Game.Move play(Game game) {
-		MonteCarloTreeSearch mcts = new MonteCarloTreeSearch(game);
-		mcts.evaluateTreeWithTimeLimit(timeAllowedMillis);
-		return mcts.getBestMove();
+		stopPondering();
+		long startTime = System.nanoTime();
+		// No need to search a forced move
+		Game.Move move = (game.nbPossibleMoves() == 1) ? playForcedMove(game) : search(game, moveLimit());
+		if (timeManager != null) {
+			timeManager.moveDone(System.nanoTime() - startTime);
+		}
+		return move;
+	}
+	
+	/**
+	 * Play the only possible move, moving the kept trees down to the position after it
+	 * @param game The game state, with a single possible move
+	 * @return The move
+	 */
+	private Game.Move playForcedMove(Game game) {
+		Game.Move move = game.possibleMoves().get(0);
+		Log.debug("Forced move: " + move);
+		Game next = stateAfter(game, move);
+		if (trees != null && !(trees.advanceTo(game) && trees.advanceTo(next))) {
+			trees = null;
+		}
+		if (tree != null && !(tree.advanceTo(game) && tree.advanceTo(next))) {
+			tree = null;
+		}
+		if (pondering && trees != null) {
+			startPondering(trees.trees);
+		}
+		else if (pondering && tree != null) {
+			startPondering(tree);
+		}
+		return move;
+	}
+	
+	/**
+	 * Search the move to play
+	 * @param game The game state
+	 * @param limit When to stop the search
+	 * @return The best move found
+	 */
+	private Game.Move search(Game game, SearchLimit limit) {
+		if (nbThreads == 1 && compactTree) {
+			CompactMonteCarloTreeSearch mcts = new CompactMonteCarloTreeSearch(game, Math.min(1 << 16, maxNodes), newRandom());
+			mcts.setNodeBudget(maxNodes);
+			mcts.setRolloutsPerEval(nbRolloutsPerEval);
+			mcts.setEarlyTermination(earlyTermination);
+			mcts.setConvergenceStop(nbStableChecks);
+			mcts.evaluateTree(limit);
+			return mcts.getBestMove();
+		}
+		if (nbThreads > 1 && parallelism == Parallelism.ROOT) {
+			ParallelMonteCarloTreeSearch mcts = trees;
+			if (mcts == null || mcts.trees.length != nbThreads 
+					|| mcts.trees[0].player != game.player() || !mcts.advanceTo(game)) {
+				mcts = new ParallelMonteCarloTreeSearch(game, nbThreads, executor(), newRandom());
+			}
+			mcts.setRolloutsPerEval(nbRolloutsPerEval);
+			mcts.setNodeBudget(maxNodes);
+			mcts.setEarlyTermination(earlyTermination);
+			mcts.setConvergenceStop(nbStableChecks);
+			mcts.evaluateTree(limit);
+			Game.Move move = mcts.getBestMove();
+			trees = (reuseTree && mcts.advanceTo(stateAfter(game, move))) ? mcts : null;
+			if (pondering && trees != null) {
+				startPondering(trees.trees);
+			}
+			return move;
+		}
+		MonteCarloTreeSearch mcts = tree;
+		if (mcts == null || mcts.player != game.player() || !mcts.advanceTo(game)) {
+			mcts = new MonteCarloTreeSearch(game, newRandom());
+		}
+		mcts.setNodeBudget(maxNodes);
+		mcts.setEarlyTermination(earlyTermination);
+		mcts.setConvergenceStop(nbStableChecks);
+		if (nbThreads > 1 && parallelism == Parallelism.TREE) {
+			mcts.setRollouts(nbRolloutsPerEval, null);
+			mcts.evaluateTree(limit, nbThreads, executor());
+		}
+		else {
+			mcts.setRollouts(nbRolloutsPerEval, (nbThreads > 1 && parallelism == Parallelism.LEAF) ? rolloutPool() : null);
+			mcts.evaluateTree(limit);
+		}
+		Game.Move move = mcts.getBestMove();
+		tree = (reuseTree && mcts.advanceTo(stateAfter(game, move))) ? mcts : null;
+		if (pondering && tree != null) {
+			startPondering(tree);
+		}
+		return move;
 	}
 }
@@ -2,7 +2,7 @@ package fr.istic.ia.tp1;
 
 import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.Random;
 
 import fr.istic.ia.tp1.Game.Move;
 
@@ -12,6 +12,24 @@ import fr.istic.ia.tp1.Game.Move;
  *
  */
 public class PlayerRandom implements Player {
+	
+	/** The random generator, or null to use the one of the calling thread */
+	private final Random rand;
+	
+	/**
+	 * Default constructor, using the random generator of the calling thread ({@link FastRandom#current()})
+	 */
+	public PlayerRandom() {
+		this.rand = null;
+	}
+	
+	/**
+	 * Constructor with a seed, to play the same moves at each run
+	 * @param seed The seed of the random generator of the player
+	 */
+	public PlayerRandom(long seed) {
+		this.rand = new FastRandom(seed);
+	}
 
 	@Override
 	public Move play(Game game) {
@@ -20,7 +38,7 @@ public class PlayerRandom implements Player {
 		if (moves.isEmpty())
 			return null;
 		
-		int randomNum = ThreadLocalRandom.current().nextInt(0, moves.size());
+		int randomNum = (rand != null ? rand : FastRandom.current()).nextInt(moves.size());
 		Iterator<Move> it = moves.iterator();
 		for (int i=0; i<randomNum; ++i) {
 			it.next();
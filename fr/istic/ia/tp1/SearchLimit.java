@@ -0,0 +1,206 @@
+package fr.istic.ia.tp1;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * When to stop a Monte-Carlo Tree Search: after a number of iterations, of rollouts, of new nodes in the tree,
+ * after some time, or at the first of several of these limits (see {@link #or(SearchLimit)}).
+ *
+ * The iteration, rollout and node limits give the same amount of work whatever the speed and load of the machine
+ * (and, with seeded random generators, the same search at each run); the time limit gives a bounded response time.
+ *
+ * A search checks its limit at each iteration with a {@link Tracker}, which reads the clock only every few
+ * iterations, their number being adapted so that the clock is read about every {@link #CLOCK_PERIOD_NANOS}.
+ * Limits are immutable, and can be shared between searches.
+ */
+public final class SearchLimit {
+
+	/** The value of a missing limit */
+	static final long UNLIMITED = Long.MAX_VALUE;
+
+	/** The target duration between two readings of the clock by a {@link Tracker} */
+	static final long CLOCK_PERIOD_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+	/** The maximum number of iterations between two readings of the clock, bounding the delay after the deadline
+	 *  when the iterations suddenly get slower */
+	static final int MAX_CLOCK_INTERVAL = 256;
+
+	/** The maximum number of iterations ({@link MonteCarloTreeSearch#evaluateTreeOnce()}) */
+	final long maxIterations;
+
+	/** The maximum number of rollouts (random playouts) */
+	final long maxRollouts;
+
+	/** The maximum number of nodes added to the tree */
+	final long maxNodes;
+
+	/** The maximum duration, in nanoseconds */
+	final long maxNanos;
+
+	private SearchLimit(long maxIterations, long maxRollouts, long maxNodes, long maxNanos) {
+		this.maxIterations = maxIterations;
+		this.maxRollouts = maxRollouts;
+		this.maxNodes = maxNodes;
+		this.maxNanos = maxNanos;
+	}
+
+	/**
+	 * @param nbIterations The number of MCTS iterations
+	 * @return A limit of <code>nbIterations</code> iterations
+	 */
+	public static SearchLimit iterations(long nbIterations) {
+		return new SearchLimit(nbIterations, UNLIMITED, UNLIMITED, UNLIMITED);
+	}
+
+	/**
+	 * @param nbRollouts The number of rollouts (a search runs several rollouts per iteration)
+	 * @return A limit of about <code>nbRollouts</code> rollouts (the last iteration is completed)
+	 */
+	public static SearchLimit rollouts(long nbRollouts) {
+		return new SearchLimit(UNLIMITED, nbRollouts, UNLIMITED, UNLIMITED);
+	}
+
+	/**
+	 * @param nbNodes The number of nodes
+	 * @return A limit of <code>nbNodes</code> new nodes in the tree (the nodes removed by the pruning of a tree
+	 *         reaching its node budget make room for new ones)
+	 */
+	public static SearchLimit nodes(long nbNodes) {
+		return new SearchLimit(UNLIMITED, UNLIMITED, nbNodes, UNLIMITED);
+	}
+
+	/**
+	 * @param timeMillis The duration in milliseconds
+	 * @return A limit of <code>timeMillis</code> milliseconds
+	 */
+	public static SearchLimit time(long timeMillis) {
+		return new SearchLimit(UNLIMITED, UNLIMITED, UNLIMITED, TimeUnit.MILLISECONDS.toNanos(timeMillis));
+	}
+
+	/**
+	 * Combine two limits
+	 * @param other Another limit
+	 * @return A limit reached as soon as this limit or <code>other</code> is reached
+	 */
+	public SearchLimit or(SearchLimit other) {
+		return new SearchLimit(Math.min(maxIterations, other.maxIterations), Math.min(maxRollouts, other.maxRollouts),
+				Math.min(maxNodes, other.maxNodes), Math.min(maxNanos, other.maxNanos));
+	}
+
+	/**
+	 * Share the work of this limit between independent searches (e.g. the trees of a {@link ParallelMonteCarloTreeSearch})
+	 * @param nbSearches The number of searches
+	 * @return The limit of each search: the same time, and a part of the iterations, rollouts and nodes
+	 */
+	public SearchLimit split(int nbSearches) {
+		return new SearchLimit(split(maxIterations, nbSearches), split(maxRollouts, nbSearches),
+				split(maxNodes, nbSearches), maxNanos);
+	}
+
+	private static long split(long limit, int nbSearches) {
+		return (limit == UNLIMITED) ? UNLIMITED : Math.max(1, limit / nbSearches);
+	}
+
+	/**
+	 * @return <code>true</code> if the limit includes a time limit
+	 */
+	public boolean hasTimeLimit() {
+		return maxNanos != UNLIMITED;
+	}
+
+	@Override
+	public String toString() {
+		List<String> limits = new ArrayList<>();
+		if (maxNanos != UNLIMITED)      limits.add(TimeUnit.NANOSECONDS.toMillis(maxNanos) + " ms");
+		if (maxIterations != UNLIMITED) limits.add(maxIterations + " iterations");
+		if (maxRollouts != UNLIMITED)   limits.add(maxRollouts + " rollouts");
+		if (maxNodes != UNLIMITED)      limits.add(maxNodes + " nodes");
+		return limits.isEmpty() ? "unlimited" : String.join(" or ", limits);
+	}
+
+	/**
+	 * Start checking this limit
+	 * @param startNanos Value of {@link System#nanoTime()} at the start of the search
+	 * @param startRollouts The number of rollouts of the tree at the start of the search
+	 * @param startNodes The number of nodes of the tree at the start of the search
+	 * @return A tracker of the search, to be used by a single thread
+	 */
+	Tracker start(long startNanos, long startRollouts, long startNodes) {
+		return new Tracker(startNanos, startRollouts, startNodes);
+	}
+
+	/**
+	 * The progress of a search towards its limit (used by a single thread: the threads sharing a tree have one
+	 * tracker each, with the same start values)
+	 */
+	final class Tracker {
+		/** The values at the start of the search */
+		private final long startNanos, startRollouts, startNodes;
+
+		/** The time of the last reading of the clock */
+		private long lastClockNanos;
+
+		/** The number of iterations between two readings of the clock, and until the next one */
+		private int clockInterval = 1, clockCountdown = 1;
+
+		private Tracker(long startNanos, long startRollouts, long startNodes) {
+			this.startNanos = startNanos;
+			this.startRollouts = startRollouts;
+			this.startNodes = startNodes;
+			this.lastClockNanos = startNanos;
+		}
+
+		/**
+		 * Check the limit before an iteration
+		 * @param iteration The number of iterations already started by the search
+		 * @param rollouts The current number of rollouts of the tree
+		 * @param nodes The current number of nodes of the tree
+		 * @return <code>true</code> if the search must stop
+		 */
+		boolean reached(long iteration, long rollouts, long nodes) {
+			if (iteration >= maxIterations || rollouts - startRollouts >= maxRollouts || nodes - startNodes >= maxNodes)
+				return true;
+			if (maxNanos == UNLIMITED || --clockCountdown > 0)
+				return false;
+			long now = System.nanoTime();
+			// Read the clock about every CLOCK_PERIOD_NANOS
+			long elapsed = now - lastClockNanos;
+			if (elapsed < CLOCK_PERIOD_NANOS / 2 && clockInterval < MAX_CLOCK_INTERVAL) {
+				clockInterval *= 2;
+			}
+			else if (elapsed > 2 * CLOCK_PERIOD_NANOS) {
+				// Iterations got slower (e.g. out of a fully explored part of the tree): check at once
+				clockInterval = 1;
+			}
+			clockCountdown = clockInterval;
+			lastClockNanos = now;
+			return now - startNanos >= maxNanos;
+		}
+
+		/**
+		 * Estimate the number of rollouts the search can still run before reaching the limit,
+		 * the time left being converted at the rate of rollouts measured since the start of the search
+		 * @param iteration The number of iterations already started by the search
+		 * @param rollouts The current number of rollouts of the tree
+		 * @param rolloutsPerIteration The number of rollouts of an iteration
+		 * @return The number of remaining rollouts, or {@link SearchLimit#UNLIMITED} if unknown
+		 */
+		long remainingRollouts(long iteration, long rollouts, int rolloutsPerIteration) {
+			long done = rollouts - startRollouts;
+			long remaining = UNLIMITED;
+			if (maxRollouts != UNLIMITED) {
+				remaining = maxRollouts - done;
+			}
+			if (maxIterations != UNLIMITED) {
+				remaining = Math.min(remaining, (maxIterations - iteration) * rolloutsPerIteration);
+			}
+			long elapsed = lastClockNanos - startNanos;
+			if (maxNanos != UNLIMITED && elapsed > 0) {
+				remaining = Math.min(remaining, (long) ((double) done * (maxNanos - elapsed) / elapsed));
+			}
+			return Math.max(0, remaining);
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package fr.istic.ia.tp1;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TestArena {
+	static Arena.Results results(int wins, int draws, int losses) {
+		Arena.Results results = new Arena.Results();
+		results.wins = wins;
+		results.draws = draws;
+		results.losses = losses;
+		return results;
+	}
+
+	@Test
+	public void testScoreInterval() {
+		double[] even = results(10, 20, 10).scoreInterval();
+		assertTrue("Around 50%", even[0] < 0.5 && even[1] > 0.5);
+		assertEquals("Symmetric", 1, even[0] + even[1], 1e-9);
+		
+		// All the games won: the interval does not shrink to 100%, and the Elo difference stays finite
+		Arena.Results allWins = results(10, 0, 0);
+		double[] interval = allWins.scoreInterval();
+		assertEquals("Upper bound", 1, interval[1], 1e-9);
+		assertTrue("Lower bound", interval[0] > 0.5 && interval[0] < 1);
+		assertTrue("Finite Elo", Double.isFinite(allWins.clampedElo(allWins.score())));
+		Arena.Results allLosses = results(0, 0, 10);
+		assertTrue("Finite Elo bound", Double.isFinite(allLosses.clampedElo(allLosses.scoreInterval()[0])));
+		String report = Arena.report(allWins, "a", "b");
+		assertFalse("No infinite Elo", report.contains("Infinity"));
+		
+		String empty = Arena.report(new Arena.Results(), "a", "b");
+		assertTrue("No game", empty.contains("0 games"));
+		assertFalse("No score", empty.contains("NaN"));
+	}
+
+	@Test
+	public void testInterruptedMatch() throws Exception {
+		Log.Level level = Log.level();
+		Log.setLevel(Log.Level.OFF);
+		try {
+			// A slow player, stopping its thinking when interrupted
+			Player slow = game -> {
+				try {
+					Thread.sleep(20);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return game.possibleMoves().get(0);
+			};
+			Arena arena = new Arena(TicTacToe::new, () -> slow, () -> slow);
+			Arena.Results[] results = new Arena.Results[1];
+			Thread match = new Thread(() -> results[0] = arena.play(100, 2));
+			match.start();
+			Thread.sleep(300);
+			match.interrupt();
+			match.join(10_000);
+			assertFalse("Match stopped", match.isAlive());
+			assertTrue("Interrupted", results[0].interrupted);
+			assertTrue("Games over counted", results[0].nbGames() > 0 && results[0].nbGames() < 100);
+			assertTrue("Reported", Arena.report(results[0], "a", "b").contains("interrupted"));
+		}
+		finally {
+			Log.setLevel(level);
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package fr.istic.ia.tp1;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TestConvergenceCheck {
+	@Test
+	public void testStableBestMove() {
+		ConvergenceCheck check = new ConvergenceCheck(3);
+		assertFalse("First check", check.hasConverged(2, 0.40));
+		assertFalse("1 stable check", check.hasConverged(2, 0.405));
+		assertFalse("2 stable checks", check.hasConverged(2, 0.41));
+		assertTrue("3 stable checks", check.hasConverged(2, 0.412));
+		assertTrue("Still stable", check.hasConverged(2, 0.412));
+		
+		check.reset();
+		assertFalse("Checks forgotten", check.hasConverged(2, 0.412));
+	}
+
+	@Test
+	public void testChangingBestMove() {
+		ConvergenceCheck check = new ConvergenceCheck(2);
+		for (int i = 0; i < 20; ++i) {
+			assertFalse("Best move changing", check.hasConverged(i % 2, 0.5));
+		}
+		for (int i = 0; i < 20; ++i) {
+			assertFalse("Value changing", check.hasConverged(1, 0.5 + 2 * i * ConvergenceCheck.TOLERANCE));
+		}
+		
+		// The count restarts after a change
+		check.hasConverged(1, 0.5);
+		check.hasConverged(1, 0.5);
+		assertFalse("New best move", check.hasConverged(0, 0.5));
+		assertFalse("1 stable check", check.hasConverged(0, 0.5));
+		assertTrue("2 stable checks", check.hasConverged(0, 0.5));
+	}
+
+	@Test
+	public void testDisabled() {
+		ConvergenceCheck check = new ConvergenceCheck(0);
+		assertFalse("Disabled", check.isEnabled());
+		for (int i = 0; i < 20; ++i) {
+			assertFalse("Never converged", check.hasConverged(1, 0.5));
+		}
+	}
+}
@@ -5,6 +5,7 @@ import org.junit.Test;
 
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 import static java.util.Arrays.asList;
 import static org.junit.Assert.*;
@@ -191,4 +192,69 @@ public class TestEnglishDraughts {
 		assertTrue("Remove adversary from 8", draughts.board.isEmpty(8));
 		assertEquals("Finish in 4 and get crowned", CheckerBoard.WHITE_KING, draughts.board.get(4));
 	}
+	
+	@Test
+	public void testUndoMutipleTakeCrown() {
+		EnglishDraughts draughts = new EnglishDraughts(8);
+		setBoard(draughts.board, asList(18,19), asList(10), asList(6,8,15), asList(7));
+		draughts.nbKingMovesWithoutCapture = 3;
+		String before = draughts.toString();
+		draughts.play(newMove(draughts, asList(18,11,4)));
+		draughts.play(newMove(draughts, asList(7,14)));
+		draughts.undo();
+		draughts.undo();
+		assertEquals("Pawns restored", before, draughts.toString());
+		assertEquals("Uncrowned", CheckerBoard.WHITE_CHECKER, draughts.board.get(18));
+		assertEquals("Counter restored", 3, draughts.nbKingMovesWithoutCapture);
+		assertEquals("Player restored", PlayerId.ONE, draughts.player());
+	}
+	
+	@Test
+	public void testStateKeyTransposition() {
+		EnglishDraughts draughts = new EnglishDraughts(8);
+		long start = draughts.stateKey();
+		draughts.play(newMove(draughts, asList(21, 17)));
+		draughts.play(newMove(draughts, asList(10, 14)));
+		draughts.play(newMove(draughts, asList(22, 18)));
+		long key = draughts.stateKey();
+		
+		EnglishDraughts other = new EnglishDraughts(8);
+		other.play(newMove(other, asList(22, 18)));
+		other.play(newMove(other, asList(10, 14)));
+		assertNotEquals("Player to move in key", key, other.stateKey());
+		other.play(newMove(other, asList(21, 17)));
+		assertEquals("Same position, same key", key, other.stateKey());
+		assertEquals("Same position, equal games", draughts, other);
+		assertEquals("Same position, same hash code", draughts.hashCode(), other.hashCode());
+		other.nbKingMovesWithoutCapture = 1;
+		assertNotEquals("Counter in equality", draughts, other);
+		
+		draughts.undo();
+		draughts.undo();
+		draughts.undo();
+		assertEquals("Key restored", start, draughts.stateKey());
+	}
+	
+	@Test
+	public void testPerft() {
+		// Known counts of English draughts from the initial position
+		long[] expected = {1, 7, 49, 302, 1469, 7361, 36768};
+		EnglishDraughts draughts = new EnglishDraughts(8);
+		String before = draughts.toString();
+		for (int depth = 0; depth < expected.length; ++depth) {
+			assertEquals("perft(" + depth + ")", expected[depth], Perft.perft(draughts, depth));
+			assertEquals("Buffered perft(" + depth + ")", expected[depth], Perft.count(draughts, depth));
+		}
+		assertEquals("Game restored", before, draughts.toString());
+		
+		Map<Game.Move, Long> divide = Perft.divide(draughts, 6, 2);
+		assertEquals("One count per move", 7, divide.size());
+		assertEquals("Divide total", 36768, divide.values().stream().mapToLong(Long::longValue).sum());
+		try {
+			Perft.divide(draughts, 0, 1);
+			fail("Divide at depth 0");
+		} catch (IllegalArgumentException e) {
+			// No move below which to count
+		}
+	}
 }
@@ -0,0 +1,48 @@
+package fr.istic.ia.tp1;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
+public class TestFastRandom {
+	@Test
+	public void testFastRandom() {
+		FastRandom rand = new FastRandom(7);
+		for (int bound : new int[] {1, 2, 7, 1 << 20, (1 << 30) + 1, Integer.MAX_VALUE}) {
+			for (int i = 0; i < 1000; ++i) {
+				int value = rand.nextInt(bound);
+				assertTrue("In [0, " + bound + ")", value >= 0 && value < bound);
+			}
+		}
+		
+		// 2^32 / bound = 8/3: without the rejection, the values of the form 3k+2 would get 2 chances in 8, not 1 in 3
+		int bound = 0x60000000;
+		int nbDraws = 30000;
+		int count = 0;
+		for (int i = 0; i < nbDraws; ++i) {
+			if (rand.nextInt(bound) % 3 == 2) {
+				count++;
+			}
+		}
+		assertEquals("Unbiased", 1.0 / 3, (double) count / nbDraws, 0.02);
+		
+		FastRandom same = new FastRandom(42), other = new FastRandom(42);
+		for (int i = 0; i < 100; ++i) {
+			assertEquals("Same seed, same numbers", same.nextInt(100), other.nextInt(100));
+		}
+	}
+
+	@Test
+	public void testPlayerRandomSeed() {
+		List<String> first = new ArrayList<>(), second = new ArrayList<>();
+		for (List<String> moves : asList(first, second)) {
+			MainGameLoop.playGame(new EnglishDraughts(6), new PlayerRandom(1), new PlayerRandom(2), MainGameLoop.Output.JSON, moves);
+		}
+		assertFalse("Moves played", first.isEmpty());
+		assertEquals("Seeded players, same game", first, second);
+	}
+}
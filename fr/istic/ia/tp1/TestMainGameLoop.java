@@ -0,0 +1,130 @@
+package fr.istic.ia.tp1;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+public class TestMainGameLoop {
+	/**
+	 * Check that a call fails with an {@link IllegalArgumentException}
+	 * @param message The assertion message
+	 * @param call The call
+	 */
+	static void assertInvalid(String message, Runnable call) {
+		try {
+			call.run();
+			fail(message);
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testGameSupplier() {
+		assertTrue("Tic-tac-toe", MainGameLoop.gameSupplier("tictactoe").get() instanceof TicTacToe);
+		assertEquals("Default size", "English Draughts (8x8)", MainGameLoop.gameSupplier("draughts").toString());
+		assertEquals("Board size", "English Draughts on 6x6", MainGameLoop.gameSupplier("draughts6").toString());
+		assertEquals("New game", 5, MainGameLoop.gameSupplier("draughts6").get().possibleMoves().size());
+		
+		assertInvalid("Unknown game", () -> MainGameLoop.gameSupplier("chess"));
+		assertInvalid("Not a size", () -> MainGameLoop.gameSupplier("draughtsx"));
+		assertInvalid("Odd size", () -> MainGameLoop.gameSupplier("draughts7"));
+		assertInvalid("Too large", () -> MainGameLoop.gameSupplier("draughts14"));
+	}
+
+	@Test
+	public void testPlayerSupplier() {
+		assertTrue("Human", MainGameLoop.playerSupplier("human").get() instanceof PlayerHuman);
+		assertTrue("Move list", ((PlayerHuman) MainGameLoop.playerSupplier("human:list").get()).displayChoices);
+		assertEquals("Named after the description", "random:seed=3", MainGameLoop.playerSupplier("random:seed=3").toString());
+		
+		// The same seed gives the same moves
+		Game game = new TicTacToe();
+		Player random = MainGameLoop.playerSupplier("random:seed=3").get();
+		assertEquals("Seeded", random.play(game).toString(), 
+				MainGameLoop.playerSupplier("random:seed=3").get().play(game).toString());
+		
+		// A new player for each call, with all the options
+		MainGameLoop.NamedSupplier<Player> mcts = 
+				MainGameLoop.playerSupplier("mcts:time=1000,iterations=50,rollouts=1,seed=2,reuse=false,pondering=false");
+		PlayerMCTS player = (PlayerMCTS) mcts.get();
+		try {
+			assertNotSame("New player", player, mcts.get());
+			assertTrue("Legal move", game.possibleMoves().toString().contains(player.play(game).toString()));
+		}
+		finally {
+			player.close();
+		}
+		
+		assertInvalid("Unknown type", () -> MainGameLoop.playerSupplier("alphazero"));
+		assertInvalid("Unknown option", () -> MainGameLoop.playerSupplier("random:depth=3"));
+		assertInvalid("Unknown option", () -> MainGameLoop.playerSupplier("mcts:time=100,depth=3"));
+		assertInvalid("Not a number", () -> MainGameLoop.playerSupplier("mcts:time=fast"));
+		assertInvalid("Unknown parallelism", () -> MainGameLoop.playerSupplier("mcts:threads=2,parallelism=gpu"));
+	}
+
+	@Test
+	public void testReadSettings() throws IOException {
+		File config = File.createTempFile("game", ".properties");
+		try {
+			try (Writer writer = new FileWriter(config)) {
+				writer.write("game=draughts6\nplayer1=random\nplayer2=mcts\n");
+			}
+			Properties settings = MainGameLoop.readSettings(
+					new String[] { "--config", config.getPath(), "--player2", "random:seed=1" });
+			assertEquals("From the file", "draughts6", settings.getProperty("game"));
+			assertEquals("Overridden", "random:seed=1", settings.getProperty("player2"));
+			assertNull("No config key", settings.getProperty("config"));
+			assertEquals("All the settings", 3, settings.size());
+		}
+		finally {
+			config.delete();
+		}
+		
+		assertInvalid("Missing value", () -> readSettings("--game"));
+		assertInvalid("Not a key", () -> readSettings("game", "draughts"));
+		try {
+			MainGameLoop.readSettings(new String[] { "--config", config.getPath() });
+			fail("Missing file");
+		} catch (IOException e) {
+			// Expected
+		}
+		
+		assertInvalid("Unknown setting", () -> playConfigured("--player1", "random", "--player2", "random", "--speed", "3"));
+		assertInvalid("Missing player", () -> playConfigured("--player1", "random"));
+		assertInvalid("Size of tic-tac-toe", 
+				() -> playConfigured("--game", "tictactoe", "--size", "6", "--player1", "random", "--player2", "random"));
+	}
+
+	/**
+	 * @param args The command-line arguments
+	 * @return The settings (see {@link MainGameLoop#readSettings(String[])})
+	 */
+	static Properties readSettings(String... args) {
+		try {
+			return MainGameLoop.readSettings(args);
+		} catch (IOException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * @param args The command-line arguments of a game (see {@link MainGameLoop#playConfigured(Properties)})
+	 */
+	static void playConfigured(String... args) {
+		MainGameLoop.playConfigured(readSettings(args));
+	}
+
+	@Test
+	public void testJsonString() {
+		assertEquals("Plain", "\"8x8\"", MainGameLoop.jsonString("8x8"));
+		assertEquals("Quotes and backslashes", "\"a\\\"b\\\\c\"", MainGameLoop.jsonString("a\"b\\c"));
+		assertEquals("Control characters", "\"\\n\\t\\u0001\"", MainGameLoop.jsonString("\n\t\u0001"));
+	}
+}
@@ -0,0 +1,477 @@
+package fr.istic.ia.tp1;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
+public class TestMonteCarloTreeSearch {
+	static TicTacToe ticTacToe(int... positions) {
+		TicTacToe game = new TicTacToe();
+		for (int pos : positions) {
+			game.play(game.new Move(pos));
+		}
+		return game;
+	}
+
+	/**
+	 * @param game A game state
+	 * @param move A move
+	 * @return <code>true</code> if the move is one of the possible moves of the game (compared by their text)
+	 */
+	static boolean isLegal(Game game, Game.Move move) {
+		return game.possibleMoves().stream().anyMatch(m -> m.toString().equals(move.toString()));
+	}
+
+	/**
+	 * Count the parent-child links of a tree whose nodes may be shared
+	 * @param root The root of the tree
+	 * @return The number of links between distinct nodes
+	 */
+	static int countLinks(MonteCarloTreeSearch.EvalNode root) {
+		Set<MonteCarloTreeSearch.EvalNode> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+		List<MonteCarloTreeSearch.EvalNode> stack = new ArrayList<>();
+		stack.add(root);
+		visited.add(root);
+		int links = 0;
+		while (!stack.isEmpty()) {
+			for (MonteCarloTreeSearch.EvalNode child : stack.remove(stack.size() - 1).children()) {
+				links++;
+				if (visited.add(child)) {
+					stack.add(child);
+				}
+			}
+		}
+		return links;
+	}
+
+	@Test
+	public void testIterationBudget() {
+		Log.Level level = Log.level();
+		Log.setLevel(Log.Level.OFF);
+		try {
+			// Ended games are reached again and again on tic-tac-toe: each visit still counts as an iteration
+			MonteCarloTreeSearch mcts = new MonteCarloTreeSearch(new TicTacToe(), new FastRandom(1));
+			mcts.setRollouts(10, null);
+			mcts.evaluateTreeWithIterations(2000);
+			assertEquals("Iterations", 2000, mcts.nTotal);
+			assertEquals("Simulations", 20000, mcts.root.n);
+
+			CompactMonteCarloTreeSearch compact = new CompactMonteCarloTreeSearch(new TicTacToe(), 1024, new FastRandom(1));
+			compact.setRolloutsPerEval(10);
+			compact.evaluateTreeWithIterations(2000);
+			assertEquals("Compact iterations", 2000, compact.nTotal);
+			assertEquals("Compact simulations", 20000, compact.n[CompactMonteCarloTreeSearch.ROOT]);
+		}
+		finally {
+			Log.setLevel(level);
+		}
+	}
+
+	@Test
+	public void testTreeParallelIterationBudget() {
+		Log.Level level = Log.level();
+		Log.setLevel(Log.Level.OFF);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			// A thread reaching an ended game goes on: the threads together run all the iterations
+			MonteCarloTreeSearch mcts = new MonteCarloTreeSearch(new TicTacToe(), new FastRandom(1));
+			mcts.setRollouts(10, null);
+			mcts.evaluateTreeWithIterations(2000, 4, executor);
+			assertEquals("Iterations", 2000, mcts.nTotal);
+			assertEquals("Simulations, without virtual losses", 20000, mcts.root.n);
+			
+			mcts = new MonteCarloTreeSearch(new EnglishDraughts(6), new FastRandom(1));
+			mcts.setRollouts(4, null);
+			mcts.evaluateTreeWithIterations(3000, 4, executor);
+			assertEquals("Draughts iterations", 3000, mcts.nTotal);
+			assertEquals("Draughts simulations", 12000, mcts.root.n);
+		}
+		finally {
+			executor.shutdown();
+			Log.setLevel(level);
+		}
+	}
+
+	@Test
+	public void testSolvedTree() {
+		Log.Level level = Log.level();
+		Log.setLevel(Log.Level.OFF);
+		try {
+			// 4 empty cells: the whole tree is explored long before the limit
+			Game game = ticTacToe(0, 4, 8, 2, 6);
+			MonteCarloTreeSearch mcts = new MonteCarloTreeSearch(game, new FastRandom(1));
+			mcts.setRollouts(1, null);
+			mcts.evaluateTreeWithIterations(100_000);
+			assertTrue("Root solved", mcts.root.solved);
+			assertTrue("Stopped early", mcts.nTotal < 100_000);
+			assertTrue("Nothing more to explore", mcts.evaluateTreeOnce());
+
+			CompactMonteCarloTreeSearch compact = new CompactMonteCarloTreeSearch(game, 1024, new FastRandom(1));
+			compact.setRolloutsPerEval(1);
+			compact.evaluateTreeWithIterations(100_000);
+			assertTrue("Compact root solved", compact.solved[CompactMonteCarloTreeSearch.ROOT]);
+			assertTrue("Compact stopped early", compact.nTotal < 100_000);
+		}
+		finally {
+			Log.setLevel(level);
+		}
+	}
+
+	@Test
+	public void testOpponentChoices() {
+		Log.Level level = Log.level();
+		Log.setLevel(Log.Level.OFF);
+		try {
+			// 'x' threatens 2-4-6: 'o' must take 6, which also makes two threats of its own
+			Game game = ticTacToe(0, 4, 8, 2);
+			MonteCarloTreeSearch mcts = new MonteCarloTreeSearch(game, new FastRandom(1));
+			mcts.setRollouts(10, null);
+			mcts.evaluateTreeWithIterations(2000);
+			assertEquals("Block", "6", mcts.getBestMove().toString());
+
+			CompactMonteCarloTreeSearch compact = new CompactMonteCarloTreeSearch(game, 1024, new FastRandom(1));
+			compact.setRolloutsPerEval(10);
+			compact.evaluateTreeWithIterations(2000);
+			assertEquals("Compact block", "6", compact.getBestMove().toString());
+		}
+		finally {
+			Log.setLevel(level);
+		}
+	}
+
+	@Test
+	public void testEarlyTermination() {
+		Log.Level level = Log.level();
+		Log.setLevel(Log.Level.OFF);
+		try {
+			// With an iteration limit, the remaining rollouts are known: the early stop cannot change the move
+			Game game = ticTacToe(0, 4, 8, 2);
+			MonteCarloTreeSearch full = new MonteCarloTreeSearch(game, new FastRandom(3));
+			full.setRollouts(10, null);
+			full.evaluateTreeWithIterations(5000);
+			MonteCarloTreeSearch early = new MonteCarloTreeSearch(game, new FastRandom(3));
+			early.setRollouts(10, null);
+			early.setEarlyTermination(true);
+			early.evaluateTreeWithIterations(5000);
+			assertTrue("Stopped early", early.nTotal < full.nTotal);
+			assertEquals("Same move", full.getBestMove().toString(), early.getBestMove().toString());
+		}
+		finally {
+			Log.setLevel(level);
+		}
+	}
+
+	@Test
+	public void testConvergenceStop() {
+		Log.Level level = Log.level();
+		Log.setLevel(Log.Level.OFF);
+		try {
+			// The best move of the opening stabilizes long before the limit
+			Game game = new EnglishDraughts(8);
+			MonteCarloTreeSearch mcts = new MonteCarloTreeSearch(game, new FastRandom(3));
+			mcts.setRollouts(10, null);
+			mcts.setConvergenceStop(3);
+			mcts.evaluateTreeWithIterations(20000);
+			assertTrue("Stopped early", mcts.root.n < 20000 * 10);
+			assertTrue("After the stable checks", mcts.root.n >= 4 * MonteCarloTreeSearch.EARLY_TERMINATION_PERIOD * 10);
+			
+			CompactMonteCarloTreeSearch compact = new CompactMonteCarloTreeSearch(game, 1024, new FastRandom(3));
+			compact.setRolloutsPerEval(10);
+			compact.setConvergenceStop(3);
+			compact.evaluateTreeWithIterations(20000);
+			assertTrue("Compact tree stopped early", compact.n[CompactMonteCarloTreeSearch.ROOT] < 20000 * 10);
+			
+			// Without enough stable checks before the limit, the search runs until the limit
+			mcts = new MonteCarloTreeSearch(game, new FastRandom(3));
+			mcts.setRollouts(10, null);
+			mcts.setConvergenceStop(1000);
+			mcts.evaluateTreeWithIterations(2000);
+			assertEquals("All the iterations", 2000 * 10, mcts.root.n);
+		}
+		finally {
+			Log.setLevel(level);
+		}
+	}
+
+	@Test
+	public void testNodeBudget() {
+		Log.Level level = Log.level();
+		Log.setLevel(Log.Level.OFF);
+		try {
+			Game game = new EnglishDraughts(8);
+			MonteCarloTreeSearch mcts = new MonteCarloTreeSearch(game, new FastRandom(1));
+			mcts.setRollouts(2, null);
+			mcts.setNodeBudget(500);
+			mcts.evaluateTreeWithIterations(5000);
+			assertTrue("Within the budget", mcts.nbNodes() <= 500);
+			assertEquals("Node count", MonteCarloTreeSearch.countNodes(mcts.root), mcts.nbNodes());
+			assertEquals("All the iterations", 5000, mcts.nTotal);
+			assertTrue("Legal best move", game.possibleMoves().contains(mcts.getBestMove()));
+		}
+		finally {
+			Log.setLevel(level);
+		}
+	}
+
+	@Test
+	public void testTranspositionTable() {
+		Log.Level level = Log.level();
+		Log.setLevel(Log.Level.OFF);
+		try {
+			// The same position reached by two move orders gets the same node
+			MonteCarloTreeSearch mcts = new MonteCarloTreeSearch(new EnglishDraughts(8), new FastRandom(1));
+			EnglishDraughts first = new EnglishDraughts(8), second = new EnglishDraughts(8);
+			for (List<Integer> move : asList(asList(21, 17), asList(10, 14), asList(22, 18))) {
+				first.play(TestEnglishDraughts.newMove(first, move));
+			}
+			for (List<Integer> move : asList(asList(22, 18), asList(10, 14), asList(21, 17))) {
+				second.play(TestEnglishDraughts.newMove(second, move));
+			}
+			MonteCarloTreeSearch.EvalNode node = mcts.childNode(first.stateKey());
+			assertSame("Shared node", node, mcts.childNode(second.stateKey()));
+			
+			// One bucket of two entries: the least visited node is replaced, and stays a valid node
+			mcts.setTranspositionTableSize(2);
+			MonteCarloTreeSearch.EvalNode a = mcts.childNode(1), b = mcts.childNode(2);
+			a.n = 5;
+			b.n = 1;
+			MonteCarloTreeSearch.EvalNode c = mcts.childNode(3);
+			assertSame("Most visited kept", a, mcts.childNode(1));
+			assertSame("New entry kept", c, mcts.childNode(3));
+			assertNotSame("Least visited replaced", b, mcts.childNode(2));
+			
+			// Searches with a large and a tiny table: the nodes are shared, and the tree stays consistent
+			for (int size : new int[] {MonteCarloTreeSearch.DEFAULT_TRANSPOSITION_TABLE_SIZE, 4}) {
+				mcts = new MonteCarloTreeSearch(new EnglishDraughts(8), new FastRandom(1));
+				mcts.setRollouts(2, null);
+				mcts.setTranspositionTableSize(size);
+				mcts.evaluateTreeWithIterations(3000);
+				int nbNodes = MonteCarloTreeSearch.countNodes(mcts.root);
+				assertEquals("Node count (table of " + size + ")", nbNodes, mcts.nbNodes());
+				assertEquals("Simulations (table of " + size + ")", 6000, mcts.root.n);
+				if (size > 4) {
+					assertTrue("Shared nodes", countLinks(mcts.root) > nbNodes - 1);
+				}
+			}
+		}
+		finally {
+			Log.setLevel(level);
+		}
+	}
+
+	@Test
+	public void testCompactTree() {
+		Log.Level level = Log.level();
+		Log.setLevel(Log.Level.OFF);
+		try {
+			// 'o' wins by taking 2: both trees find it
+			Game game = ticTacToe(0, 4, 1, 8);
+			MonteCarloTreeSearch mcts = new MonteCarloTreeSearch(game, new FastRandom(5));
+			mcts.setRollouts(10, null);
+			mcts.evaluateTreeWithIterations(1000);
+			CompactMonteCarloTreeSearch compact = new CompactMonteCarloTreeSearch(game, 1024, new FastRandom(5));
+			compact.setRolloutsPerEval(10);
+			compact.evaluateTreeWithIterations(1000);
+			assertEquals("Winning move", "2", mcts.getBestMove().toString());
+			assertEquals("Same move", mcts.getBestMove().toString(), compact.getBestMove().toString());
+			
+			// Pruned to half of the budget when it is reached, then at most one expansion over it
+			game = new EnglishDraughts(8);
+			compact = new CompactMonteCarloTreeSearch(game, 64, new FastRandom(5));
+			compact.setRolloutsPerEval(2);
+			compact.setNodeBudget(300);
+			compact.evaluateTreeWithIterations(3000);
+			assertTrue("Within the budget", compact.nbNodes() < 300 + 50);
+			int reachable = 1;
+			List<Integer> stack = new ArrayList<>(asList(CompactMonteCarloTreeSearch.ROOT));
+			while (!stack.isEmpty()) {
+				int node = stack.remove(stack.size() - 1);
+				for (int i = 0; i < compact.nbChildren[node]; ++i) {
+					stack.add(compact.firstChild[node] + i);
+					reachable++;
+				}
+			}
+			assertEquals("Compacted nodes", reachable, compact.nbNodes());
+			assertEquals("All the iterations", 6000, compact.n[CompactMonteCarloTreeSearch.ROOT]);
+			assertTrue("Legal best move", game.possibleMoves().contains(compact.getBestMove()));
+		}
+		finally {
+			Log.setLevel(level);
+		}
+	}
+
+	@Test
+	public void testInvokeAllFailure() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		CountDownLatch started = new CountDownLatch(1);
+		AtomicBoolean stopped = new AtomicBoolean();
+		List<Callable<Void>> tasks = new ArrayList<>();
+		tasks.add(() -> {
+			started.countDown();
+			while (!Thread.currentThread().isInterrupted()) {
+				Thread.onSpinWait();
+			}
+			stopped.set(true);
+			return null;
+		});
+		tasks.add(() -> {
+			started.await();
+			throw new IllegalArgumentException("Worker failure");
+		});
+		try {
+			ParallelMonteCarloTreeSearch.invokeAll(executor, tasks);
+			fail("Failure not rethrown");
+		}
+		catch (IllegalStateException e) {
+			assertTrue("Cause", e.getCause() instanceof IllegalArgumentException);
+		}
+		finally {
+			executor.shutdown();
+		}
+		assertTrue("Other worker stopped before returning", stopped.get());
+	}
+
+	@Test
+	public void testAdvanceTo() {
+		Log.Level level = Log.level();
+		Log.setLevel(Log.Level.OFF);
+		try {
+			MonteCarloTreeSearch mcts = new MonteCarloTreeSearch(new TicTacToe(), new FastRandom(2));
+			mcts.setRollouts(4, null);
+			mcts.evaluateTreeWithIterations(500);
+			assertTrue("Already at the root", mcts.advanceTo(new TicTacToe()));
+			
+			// An unknown position leaves the tree unchanged
+			MonteCarloTreeSearch.EvalNode root = mcts.root;
+			int nbNodes = mcts.nbNodes;
+			assertFalse("Two moves ahead", mcts.advanceTo(ticTacToe(4, 0)));
+			assertSame("Same root", root, mcts.root);
+			assertEquals("Same nodes", nbNodes, mcts.nbNodes);
+			assertTrue("Same root game", mcts.rootGame.equals(new TicTacToe()));
+			
+			// The child keeps its statistics
+			Game next = ticTacToe(4);
+			MonteCarloTreeSearch.EvalNode child = null;
+			for (int i = 0; i < root.children().size(); ++i) {
+				Game state = new TicTacToe();
+				state.playMove(root.childMove(i));
+				if (state.equals(next)) {
+					child = root.children().get(i);
+				}
+			}
+			assertNotNull("Center explored", child);
+			int childN = child.n;
+			assertTrue("Advanced", mcts.advanceTo(next));
+			assertSame("Child as root", child, mcts.root);
+			assertEquals("Child simulations", childN, mcts.root.n);
+			assertEquals("Subtree nodes", MonteCarloTreeSearch.countNodes(child), mcts.nbNodes);
+			assertEquals("Statistic reset", 0, mcts.nTotal);
+			
+			// The search goes on from the reused statistics
+			mcts.evaluateTreeWithIterations(100);
+			assertEquals("Simulations added", childN + 100 * 4, mcts.root.n);
+			assertTrue("Legal move", isLegal(next, mcts.getBestMove()));
+		}
+		finally {
+			Log.setLevel(level);
+		}
+	}
+
+	@Test
+	public void testPlayerTreeReuse() {
+		Log.Level level = Log.level();
+		Log.setLevel(Log.Level.OFF);
+		PlayerMCTS player = new PlayerMCTS();
+		try {
+			player.setSearchLimit(SearchLimit.iterations(200));
+			player.setRolloutsPerEval(4);
+			player.setSeed(4);
+			player.newGame();
+			Game game = new TicTacToe();
+			Game.Move move = player.play(game);
+			game.play(move);
+			game.play(game.possibleMoves().get(0));
+			// Reachable from the kept tree
+			assertTrue("Legal move", isLegal(game, player.play(game)));
+			
+			// Not reachable from the kept tree: a new tree is searched
+			Game other = ticTacToe(1, 3, 5, 7);
+			assertTrue("Legal move from a fresh tree", isLegal(other, player.play(other)));
+			// Not the player of the kept tree
+			Game opponent = ticTacToe(1, 3, 5);
+			assertTrue("Legal move for the other player", isLegal(opponent, player.play(opponent)));
+		}
+		finally {
+			player.close();
+			Log.setLevel(level);
+		}
+	}
+
+	@Test
+	public void testParallelAdvanceTo() {
+		Log.Level level = Log.level();
+		Log.setLevel(Log.Level.OFF);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			ParallelMonteCarloTreeSearch parallel = new ParallelMonteCarloTreeSearch(new TicTacToe(), 2, executor, new FastRandom(1));
+			parallel.setRolloutsPerEval(4);
+			parallel.evaluateTreeWithIterations(500);
+			// The first tree goes one move ahead: only it can reach the next position
+			Game next = ticTacToe(4, 0);
+			assertTrue("First tree advanced", parallel.trees[0].advanceTo(ticTacToe(4)));
+			assertTrue("First tree can advance", parallel.trees[0].canAdvanceTo(next));
+			MonteCarloTreeSearch.EvalNode first = parallel.trees[0].root, second = parallel.trees[1].root;
+			assertFalse("Second tree cannot advance", parallel.advanceTo(next));
+			assertSame("First tree unchanged", first, parallel.trees[0].root);
+			assertSame("Second tree unchanged", second, parallel.trees[1].root);
+		}
+		finally {
+			executor.shutdown();
+			Log.setLevel(level);
+		}
+	}
+
+	@Test
+	public void testSeededSearch() {
+		Log.Level level = Log.level();
+		Log.setLevel(Log.Level.OFF);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			MonteCarloTreeSearch[] searches = new MonteCarloTreeSearch[2];
+			for (int i = 0; i < 2; ++i) {
+				searches[i] = new MonteCarloTreeSearch(new EnglishDraughts(8), new FastRandom(123));
+				searches[i].setRollouts(4, null);
+				searches[i].evaluateTreeWithIterations(2000);
+			}
+			assertEquals("Same simulations", searches[0].root.n, searches[1].root.n);
+			assertEquals("Same wins", searches[0].root.w, searches[1].root.w, 0);
+			assertEquals("Same tree", searches[0].stats(), searches[1].stats());
+			assertEquals("Same best move", searches[0].getBestMove(), searches[1].getBestMove());
+			
+			ParallelMonteCarloTreeSearch[] parallel = new ParallelMonteCarloTreeSearch[2];
+			for (int i = 0; i < 2; ++i) {
+				parallel[i] = new ParallelMonteCarloTreeSearch(new EnglishDraughts(8), 2, executor, new FastRandom(123));
+				parallel[i].setRolloutsPerEval(4);
+				parallel[i].evaluateTreeWithIterations(1000);
+			}
+			assertEquals("Same trees", parallel[0].stats(), parallel[1].stats());
+			assertEquals("Same merged best move", parallel[0].getBestMove(), parallel[1].getBestMove());
+		}
+		finally {
+			executor.shutdown();
+			Log.setLevel(level);
+		}
+	}
+}
@@ -0,0 +1,32 @@
+package fr.istic.ia.tp1;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TestSearchLimit {
+	@Test
+	public void testSearchLimit() {
+		Log.Level level = Log.level();
+		Log.setLevel(Log.Level.OFF);
+		try {
+			MonteCarloTreeSearch mcts = new MonteCarloTreeSearch(new EnglishDraughts(8), new FastRandom(1));
+			mcts.setRollouts(10, null);
+			mcts.evaluateTree(SearchLimit.iterations(30));
+			assertEquals("Iterations", 30, mcts.nTotal);
+			mcts.evaluateTree(SearchLimit.rollouts(100));
+			assertEquals("Rollouts", 400, mcts.root.n);
+			int nbNodes = mcts.nbNodes();
+			mcts.evaluateTree(SearchLimit.nodes(5).or(SearchLimit.iterations(1000)));
+			assertEquals("Nodes", nbNodes + 5, mcts.nbNodes());
+			
+			long startTime = System.nanoTime();
+			mcts.evaluateTree(SearchLimit.time(50).or(SearchLimit.iterations(Long.MAX_VALUE - 1)));
+			long duration = System.nanoTime() - startTime;
+			assertTrue("Time limit", duration >= 50_000_000L && duration < 1_000_000_000L);
+		}
+		finally {
+			Log.setLevel(level);
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package fr.istic.ia.tp1;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TestTimeManager {
+	@Test
+	public void testTimeManager() {
+		TimeManager clock = new TimeManager(40_000, 0);
+		assertEquals("Time shared between the expected moves", 1000, clock.moveTimeMillis());
+		clock.moveDone(TimeUnit.MILLISECONDS.toNanos(220));
+		assertEquals("Saved time spent on the next moves", 1020, clock.moveTimeMillis());
+		for (int i = 0; i < TimeManager.EXPECTED_MOVES; ++i) {
+			clock.moveDone(0);
+		}
+		assertEquals("At least a few moves to go", 39780 / TimeManager.MIN_MOVES_TO_GO, clock.moveTimeMillis());
+		clock.moveDone(TimeUnit.MILLISECONDS.toNanos(50_000));
+		assertEquals("Exceeded clock", 1, clock.moveTimeMillis());
+		clock.reset();
+		assertEquals("Clock reset", 1000, clock.moveTimeMillis());
+		
+		TimeManager increment = new TimeManager(1000, 2000);
+		assertEquals("Capped by the remaining time", 500, increment.moveTimeMillis());
+		increment.moveDone(TimeUnit.MILLISECONDS.toNanos(500));
+		assertEquals("Increment added", 2500, increment.remainingMillis());
+	}
+}
@@ -11,6 +11,16 @@ public class TicTacToe extends Game {
 	private PlayerId playerId;
 	private char[] board;
 	
+	/** The positions played since creation (or clone), for undo */
+	private int[] history;
+	private int historySize;
+	
+	/** The marks of the board as a base 3 number (digit 1 for 'o', 2 for 'x'), maintained by play and undo */
+	private int marks;
+	
+	/** The powers of 3, digit weights of <code>marks</code> */
+	private static final int[] POW3 = {1, 3, 9, 27, 81, 243, 729, 2187, 6561};
+	
 	class Move implements Game.Move {
 		int pos;
 		
@@ -27,6 +37,8 @@ public class TicTacToe extends Game {
 	public TicTacToe() {
 		playerId = PlayerId.ONE;
 		board = new char[3*3];
+		history = new int[3*3];
+		historySize = 0;
 	}
 
 	@Override
@@ -56,9 +68,26 @@ public class TicTacToe extends Game {
 			mark = 0;
 		}
 		board[m.pos] = mark;
+		marks += POW3[m.pos] * markDigit(mark);
+		history[historySize++] = m.pos;
 		
 		playerId = playerId.other();
 	}
+	
+	@Override
+	public boolean canUndo() {
+		return true;
+	}
+	
+	@Override
+	public void undo() {
+		if (historySize == 0)
+			throw new IllegalStateException("No move to undo");
+		int pos = history[--historySize];
+		marks -= POW3[pos] * markDigit(board[pos]);
+		board[pos] = 0;
+		playerId = playerId.other();
+	}
 
 	@Override
 	public PlayerId player() {
@@ -76,6 +105,10 @@ public class TicTacToe extends Game {
 		}
 	}
 	
+	static int markDigit(char mark) {
+		return mark == 'o' ? 1 : mark == 'x' ? 2 : 0;
+	}
+	
 	static PlayerId playerIdFromMark(char mark) {
 		switch (mark) {
 		case 'o':
@@ -150,6 +183,30 @@ public class TicTacToe extends Game {
 		return sb.toString();
 	}
 	
+	/**
+	 * Two games are equal if they have the same marks and player, i.e. the same {@link #stateKey()}
+	 * (the undo history is not compared).
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof TicTacToe))
+			return false;
+		return stateKey() == ((TicTacToe) obj).stateKey();
+	}
+	
+	@Override
+	public int hashCode() {
+		return Long.hashCode(stateKey());
+	}
+	
+	/**
+	 * The marks of the cells in base 3, plus the player to move (exact key, there are few states)
+	 */
+	@Override
+	public long stateKey() {
+		return 2L * marks + (playerId == PlayerId.TWO ? 1 : 0);
+	}
+	
 	@Override
 	public Game clone() {
 		TicTacToe newGame = new TicTacToe();
@@ -157,6 +214,7 @@ public class TicTacToe extends Game {
 		for (int i=0; i<board.length; ++i) {
 			newGame.board[i] = board[i];
 		}
+		newGame.marks = marks;
 		return newGame;
 	}
 
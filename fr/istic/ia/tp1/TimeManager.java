@@ -0,0 +1,81 @@
+package fr.istic.ia.tp1;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The clock of a player for a whole game: a total thinking time (plus an optional increment per move),
+ * shared between the moves of the player.
+ *
+ * Each move gets the remaining time divided by the expected number of moves still to play, plus the increment.
+ * The expected number of moves decreases as the game goes on, down to {@link #MIN_MOVES_TO_GO}, so that the
+ * time saved on easy moves (forced moves, decided searches) is spent on the next ones.
+ */
+public class TimeManager {
+
+	/** The expected number of moves of a player in a game */
+	static final int EXPECTED_MOVES = 40;
+
+	/** The minimum expected number of moves still to play */
+	static final int MIN_MOVES_TO_GO = 10;
+
+	/** The largest part of the remaining time that a single move may get */
+	static final double MAX_MOVE_FRACTION = 0.5;
+
+	/** The total thinking time of the player for a game, in nanoseconds */
+	private final long gameNanos;
+
+	/** The remaining time of the player, in nanoseconds (can be negative if it was exceeded) */
+	private long remainingNanos;
+
+	/** The time added after each move, in nanoseconds */
+	private final long incrementNanos;
+
+	/** The number of moves played */
+	private int nbMoves;
+
+	/**
+	 * The constructor
+	 * @param gameTimeMillis The total thinking time of the player for the game, in milliseconds
+	 * @param incrementMillis The time added after each move, in milliseconds
+	 */
+	public TimeManager(long gameTimeMillis, long incrementMillis) {
+		this.gameNanos = TimeUnit.MILLISECONDS.toNanos(gameTimeMillis);
+		this.incrementNanos = TimeUnit.MILLISECONDS.toNanos(incrementMillis);
+		reset();
+	}
+
+	/**
+	 * Restore the whole thinking time, at the start of a new game
+	 */
+	public void reset() {
+		remainingNanos = gameNanos;
+		nbMoves = 0;
+	}
+
+	/**
+	 * @return The remaining time of the player, in milliseconds
+	 */
+	public long remainingMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(remainingNanos);
+	}
+
+	/**
+	 * Get the thinking time of the next move
+	 * @return The time allocated to the next move, in milliseconds (at least 1)
+	 */
+	public long moveTimeMillis() {
+		int movesToGo = Math.max(MIN_MOVES_TO_GO, EXPECTED_MOVES - nbMoves);
+		long available = Math.max(0, remainingNanos);
+		long moveNanos = Math.min(available / movesToGo + incrementNanos, (long) (available * MAX_MOVE_FRACTION));
+		return Math.max(1, TimeUnit.NANOSECONDS.toMillis(moveNanos));
+	}
+
+	/**
+	 * Record the time actually spent on a move
+	 * @param elapsedNanos The thinking time of the move, in nanoseconds
+	 */
+	public void moveDone(long elapsedNanos) {
+		remainingNanos += incrementNanos - elapsedNanos;
+		nbMoves++;
+	}
+}